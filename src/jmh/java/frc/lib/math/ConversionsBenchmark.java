@@ -0,0 +1,49 @@
+package frc.lib.math;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/** The conversions every swerve module runs a few times per loop */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConversionsBenchmark {
+  // Non-final so the JIT can't constant fold them
+  public double counts = 123456.0;
+  public double velocityCounts = 15000.0;
+  public double degrees = 137.5;
+  public double mps = 3.2;
+  public double circumference = 0.307;
+  public double angleGearRatio = 150.0 / 7.0;
+  public double driveGearRatio = 6.75;
+
+  @Benchmark
+  public double falconToDegrees() {
+    return Conversions.falconToDegrees(counts, angleGearRatio);
+  }
+
+  @Benchmark
+  public double degreesToFalcon() {
+    return Conversions.degreesToFalcon(degrees, angleGearRatio);
+  }
+
+  @Benchmark
+  public double falconToMPS() {
+    return Conversions.falconToMPS(velocityCounts, circumference, driveGearRatio);
+  }
+
+  @Benchmark
+  public double MPSToFalcon() {
+    return Conversions.MPSToFalcon(mps, circumference, driveGearRatio);
+  }
+
+  @Benchmark
+  public double falconToMeters() {
+    return Conversions.falconToMeters(counts, circumference, driveGearRatio);
+  }
+}
@@ -0,0 +1,83 @@
+package frc.lib.math;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * One sample into each derivative estimator, on a noisy sine sampled every 20ms. Run with
+ * -prof gc to check that none of them allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DerivativeEstimatorBenchmark {
+  private static final int signalLength = 1024;
+
+  @Param({"5", "15"})
+  public int windowSize;
+
+  private final double[] signal = new double[signalLength];
+  private LinearRegressionDerivative regression;
+  private SavitzkyGolayDerivative savitzkyGolay;
+  private AlphaBetaFilter alphaBeta;
+  private RateMeasurer finiteDifference;
+  private double time;
+  private int index;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(364);
+    for (int i = 0; i < signalLength; i++) {
+      signal[i] = Math.sin(i * 0.02 * Math.PI) + random.nextGaussian() * 0.01;
+    }
+    regression = new LinearRegressionDerivative(windowSize);
+    savitzkyGolay = new SavitzkyGolayDerivative(windowSize);
+    alphaBeta = new AlphaBetaFilter(0.3, 0.05);
+    finiteDifference = new RateMeasurer();
+    // Start at a realistic FPGA time, far from 0
+    time = 100;
+    index = 0;
+  }
+
+  private double nextValue() {
+    time += 0.02;
+    index = (index + 1) & (signalLength - 1);
+    return signal[index];
+  }
+
+  @Benchmark
+  public double linearRegression() {
+    double value = nextValue();
+    regression.addSample(time, value);
+    return regression.getRate();
+  }
+
+  @Benchmark
+  public double savitzkyGolay() {
+    double value = nextValue();
+    savitzkyGolay.addSample(time, value);
+    return savitzkyGolay.getRate();
+  }
+
+  @Benchmark
+  public double alphaBeta() {
+    double value = nextValue();
+    alphaBeta.addSample(time, value);
+    return alphaBeta.getRate();
+  }
+
+  @Benchmark
+  public double finiteDifference() {
+    double value = nextValue();
+    finiteDifference.addSample(time, value);
+    return finiteDifference.getRate();
+  }
+}
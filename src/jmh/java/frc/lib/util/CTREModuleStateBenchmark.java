@@ -0,0 +1,97 @@
+package frc.lib.util;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * CTREModuleState.optimize at different accumulated module angles. The CTRE angle is continuous,
+ * so it keeps growing over a match. optimizeLoops is the version that unwound the angle 360 degrees
+ * at a time, kept here to compare against.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CTREModuleStateBenchmark {
+  @Param({"30", "7230", "-360030", "3600000.5"})
+  public double currentDegrees;
+
+  public double desiredDegrees = 250;
+  public double desiredSpeed = 2.5;
+
+  private SwerveModuleState desiredState;
+  private Rotation2d currentAngle;
+  private final double[] out = new double[2];
+
+  @Setup
+  public void setup() {
+    desiredState = new SwerveModuleState(desiredSpeed, Rotation2d.fromDegrees(desiredDegrees));
+    currentAngle = Rotation2d.fromDegrees(currentDegrees);
+  }
+
+  @Benchmark
+  public SwerveModuleState optimizeObject() {
+    return CTREModuleState.optimize(desiredState, currentAngle);
+  }
+
+  @Benchmark
+  public double[] optimizePrimitive() {
+    CTREModuleState.optimize(desiredSpeed, desiredDegrees, currentDegrees, out);
+    return out;
+  }
+
+  @Benchmark
+  public double[] optimizeLoops() {
+    optimizeLoops(desiredSpeed, desiredDegrees, currentDegrees, out);
+    return out;
+  }
+
+  private static void optimizeLoops(
+      double speedMetersPerSecond,
+      double angleDegrees,
+      double currentAngleDegrees,
+      double[] out) {
+    double targetAngle = placeInAppropriate0To360Scope(currentAngleDegrees, angleDegrees);
+    double targetSpeed = speedMetersPerSecond;
+    double delta = targetAngle - currentAngleDegrees;
+    if (Math.abs(delta) > 90) {
+      targetSpeed = -targetSpeed;
+      targetAngle = delta > 90 ? (targetAngle -= 180) : (targetAngle += 180);
+    }
+    out[0] = targetSpeed;
+    out[1] = targetAngle;
+  }
+
+  private static double placeInAppropriate0To360Scope(double scopeReference, double newAngle) {
+    double lowerBound;
+    double upperBound;
+    double lowerOffset = scopeReference % 360;
+    if (lowerOffset >= 0) {
+      lowerBound = scopeReference - lowerOffset;
+      upperBound = scopeReference + (360 - lowerOffset);
+    } else {
+      upperBound = scopeReference - lowerOffset;
+      lowerBound = scopeReference - (360 + lowerOffset);
+    }
+    while (newAngle < lowerBound) {
+      newAngle += 360;
+    }
+    while (newAngle > upperBound) {
+      newAngle -= 360;
+    }
+    if (newAngle - scopeReference > 180) {
+      newAngle -= 360;
+    } else if (newAngle - scopeReference < -180) {
+      newAngle += 360;
+    }
+    return newAngle;
+  }
+}
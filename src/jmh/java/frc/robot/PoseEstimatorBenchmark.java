@@ -0,0 +1,108 @@
+package frc.robot;
+
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import frc.robot.util.SwervePoseEstimator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Odometry updates and vision measurements on the WPILib pose estimator and on our ring buffer
+ * one, at the odometry thread's rate. Timestamps are passed explicitly so nothing goes through the
+ * HAL clock.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PoseEstimatorBenchmark {
+  private static final double period = 1.0 / Constants.Swerve.odometryFrequency;
+  // 1.5s of history, the estimators keep that much for vision latency compensation
+  private static final int historySamples = (int) Math.ceil(1.5 / period);
+
+  private SwerveDrivePoseEstimator estimator;
+  private SwervePoseEstimator ringEstimator;
+  private final SwerveModulePosition[] positions = new SwerveModulePosition[4];
+  private final double[] distances = new double[4];
+  private final double[] angles = new double[4];
+  // Each estimator has its own clock, so both get the same samples however often JMH calls each
+  private double time;
+  private double distance;
+  private double ringTime;
+  private double ringDistance;
+  private Pose2d visionPose;
+
+  @Setup
+  public void setup() {
+    SwerveDriveKinematics kinematics =
+        new SwerveDriveKinematics(Constants.Swerve.moduleTranslations);
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = new SwerveModulePosition(0, Rotation2d.fromDegrees(30));
+      angles[i] = Math.toRadians(30);
+    }
+    estimator = new SwerveDrivePoseEstimator(kinematics, new Rotation2d(), positions, new Pose2d());
+    ringEstimator =
+        new SwervePoseEstimator(
+            Constants.Swerve.moduleTranslations, period, 0, distances, angles, new Pose2d());
+    time = 0;
+    distance = 0;
+    ringTime = 0;
+    ringDistance = 0;
+    // Fill up the pose history so vision measurements have something to replay
+    for (int i = 0; i < historySamples; i++) {
+      step();
+      ringStep();
+    }
+    visionPose = new Pose2d(distance * 0.85, distance * 0.5, Rotation2d.fromDegrees(1));
+  }
+
+  private Pose2d step() {
+    time += period;
+    distance += 0.012;
+    for (SwerveModulePosition position : positions) {
+      position.distanceMeters = distance;
+    }
+    return estimator.updateWithTime(time, Rotation2d.fromDegrees(time), positions);
+  }
+
+  private double ringStep() {
+    ringTime += period;
+    ringDistance += 0.012;
+    for (int i = 0; i < distances.length; i++) {
+      distances[i] = ringDistance;
+    }
+    ringEstimator.updateWithTime(ringTime, Math.toRadians(ringTime), distances, angles);
+    return ringEstimator.getX();
+  }
+
+  @Benchmark
+  public Pose2d update() {
+    return step();
+  }
+
+  @Benchmark
+  public Pose2d addVisionMeasurement() {
+    // A typical Limelight frame is a few loops old
+    estimator.addVisionMeasurement(visionPose, time - 0.05);
+    return step();
+  }
+
+  @Benchmark
+  public double ringUpdate() {
+    return ringStep();
+  }
+
+  @Benchmark
+  public double ringAddVisionMeasurement() {
+    ringEstimator.addVisionMeasurement(visionPose, ringTime - 0.05);
+    return ringStep();
+  }
+}
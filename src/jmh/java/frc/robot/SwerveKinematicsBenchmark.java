@@ -0,0 +1,77 @@
+package frc.robot;
+
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.lib.math.FourModuleSwerveKinematics;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Inverse kinematics plus desaturation, what teleop driving does every loop. WPILib's
+ * SwerveDriveKinematics next to FourModuleSwerveKinematics doing the same.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SwerveKinematicsBenchmark {
+  private SwerveDriveKinematics kinematics;
+  private ChassisSpeeds speeds;
+
+  private FourModuleSwerveKinematics fourModuleKinematics;
+  private final double[] moduleSpeeds = new double[4];
+  private final double[] moduleAngles = new double[4];
+
+  @Setup
+  public void setup() {
+    kinematics = new SwerveDriveKinematics(Constants.Swerve.moduleTranslations);
+    // Fast enough that desaturation actually has to scale things down
+    speeds = new ChassisSpeeds(3.5, -1.5, 4.0);
+
+    fourModuleKinematics = new FourModuleSwerveKinematics(Constants.Swerve.moduleTranslations);
+  }
+
+  @Benchmark
+  public SwerveModuleState[] toSwerveModuleStatesAndDesaturate() {
+    SwerveModuleState[] states = kinematics.toSwerveModuleStates(speeds);
+    SwerveDriveKinematics.desaturateWheelSpeeds(
+        states,
+        speeds,
+        Constants.Swerve.maxSpeed,
+        Constants.Swerve.maxSpeed,
+        Constants.Swerve.maxAngularVelocity);
+    return states;
+  }
+
+  @Benchmark
+  public double[] fourModuleToModuleStatesAndDesaturate() {
+    fourModuleKinematics.toDesaturatedModuleStates(
+        speeds.vxMetersPerSecond,
+        speeds.vyMetersPerSecond,
+        speeds.omegaRadiansPerSecond,
+        Constants.Swerve.maxSpeed,
+        Constants.Swerve.maxSpeed,
+        Constants.Swerve.maxAngularVelocity,
+        moduleSpeeds,
+        moduleAngles);
+    return moduleSpeeds;
+  }
+
+  /** What Swerve.drive uses, since the setpoint generator works out the module states itself */
+  @Benchmark
+  public double fourModuleDesaturationScale() {
+    return fourModuleKinematics.desaturationScale(
+        speeds.vxMetersPerSecond,
+        speeds.vyMetersPerSecond,
+        speeds.omegaRadiansPerSecond,
+        Constants.Swerve.maxSpeed,
+        Constants.Swerve.maxSpeed,
+        Constants.Swerve.maxAngularVelocity);
+  }
+}
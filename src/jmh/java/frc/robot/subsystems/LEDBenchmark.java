@@ -0,0 +1,40 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.wpilibj.AddressableLEDBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * LED.preprocessBuffer on a strip that is too bright (everything gets scaled down) and one that
+ * isn't. preprocessBuffer modifies the buffer, so every invocation refills it first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LEDBenchmark {
+  @Param({"255", "20"})
+  public int brightness;
+
+  private AddressableLEDBuffer buffer;
+
+  @Setup
+  public void setup() {
+    buffer = new AddressableLEDBuffer(50);
+  }
+
+  @Benchmark
+  public AddressableLEDBuffer preprocessBuffer() {
+    for (int i = 0; i < buffer.getLength(); i++) {
+      buffer.setRGB(i, brightness, brightness, brightness);
+    }
+    LED.preprocessBuffer(buffer);
+    return buffer;
+  }
+}
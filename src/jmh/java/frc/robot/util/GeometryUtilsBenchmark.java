@@ -0,0 +1,60 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Compares the object and primitive versions of GeometryUtils.exp and log */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeometryUtilsBenchmark {
+  // Below kEps (series expansion), a normal loop's worth of rotation, and a big rotation
+  @Param({"1e-10", "0.1", "3.0"})
+  public double dtheta;
+
+  private Twist2d twist;
+  private Pose2d pose;
+  private double x;
+  private double y;
+  private final double[] out = new double[3];
+
+  @Setup
+  public void setup() {
+    x = 0.08;
+    y = -0.03;
+    twist = new Twist2d(x, y, dtheta);
+    pose = new Pose2d(x, y, new Rotation2d(dtheta));
+  }
+
+  @Benchmark
+  public Pose2d expObject() {
+    return GeometryUtils.exp(twist);
+  }
+
+  @Benchmark
+  public double[] expPrimitive() {
+    GeometryUtils.exp(x, y, dtheta, out);
+    return out;
+  }
+
+  @Benchmark
+  public Twist2d logObject() {
+    return GeometryUtils.log(pose);
+  }
+
+  @Benchmark
+  public double[] logPrimitive() {
+    GeometryUtils.log(x, y, dtheta, out);
+    return out;
+  }
+}
@@ -0,0 +1,62 @@
+package frc.lib.math;
+
+/**
+ * Alpha-beta filter: tracks a value and its rate by predicting forward at the current rate, then
+ * nudging both towards each new sample. Constant work per sample and no window, so it is the
+ * cheapest of the estimators, and it copes with uneven sample spacing.
+ *
+ * <p>Higher alpha and beta follow the signal more closely, lower ones smooth more. For a well
+ * behaved filter keep 0 &lt; alpha &lt; 1 and 0 &lt; beta &lt; 4 - 2 * alpha; beta around alpha^2
+ * / (2 - alpha) is a good place to start.
+ */
+public class AlphaBetaFilter implements DerivativeEstimator {
+  private final double alpha;
+  private final double beta;
+
+  private boolean initialized = false;
+  private double lastTimestamp;
+  private double value = 0;
+  private double rate = 0;
+
+  public AlphaBetaFilter(double alpha, double beta) {
+    this.alpha = alpha;
+    this.beta = beta;
+  }
+
+  @Override
+  public void addSample(double timestampSeconds, double value) {
+    if (!initialized) {
+      initialized = true;
+      lastTimestamp = timestampSeconds;
+      this.value = value;
+      rate = 0;
+      return;
+    }
+    double dt = timestampSeconds - lastTimestamp;
+    if (dt <= 0) {
+      return;
+    }
+    lastTimestamp = timestampSeconds;
+    double predicted = this.value + rate * dt;
+    double residual = value - predicted;
+    this.value = predicted + alpha * residual;
+    rate += beta * residual / dt;
+  }
+
+  @Override
+  public double getRate() {
+    return rate;
+  }
+
+  @Override
+  public double getValue() {
+    return value;
+  }
+
+  @Override
+  public void reset() {
+    initialized = false;
+    value = 0;
+    rate = 0;
+  }
+}
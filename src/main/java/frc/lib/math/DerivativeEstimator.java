@@ -0,0 +1,20 @@
+package frc.lib.math;
+
+/**
+ * Estimates how fast a sampled signal is changing. Samples carry their own timestamps, so it works
+ * with samples from another thread or a sensor's own clock and doesn't care about loop jitter.
+ *
+ * <p>None of the implementations allocate after construction.
+ */
+public interface DerivativeEstimator {
+  /** Timestamps have to increase. Samples at or before the last one are ignored. */
+  void addSample(double timestampSeconds, double value);
+
+  /** Units per second at the newest sample, 0 until there are enough samples */
+  double getRate();
+
+  /** Smoothed value at the newest sample */
+  double getValue();
+
+  void reset();
+}
@@ -0,0 +1,149 @@
+package frc.lib.math;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * SwerveDriveKinematics for exactly four modules, on plain doubles. WPILib's version goes through
+ * EJML matrices and allocates a matrix and a state object per module on every call; this one keeps
+ * the module positions in final fields and is straight line code, so it allocates nothing and the
+ * JIT can keep everything in registers.
+ *
+ * <p>Results match SwerveDriveKinematics: inverse kinematics keeps the previous module angles when
+ * told to stop, and desaturation is the chassis speeds version of desaturateWheelSpeeds. Forward
+ * kinematics lives in ChassisVelocityEstimator and SwervePoseEstimator, which work for any number
+ * of modules.
+ *
+ * <p>Module angles are in degrees, like the rest of the module code. Not thread safe, since inverse
+ * kinematics remembers the last angles.
+ */
+public class FourModuleSwerveKinematics {
+  private final double x0, x1, x2, x3;
+  private final double y0, y1, y2, y3;
+
+  // What toModuleStates returns for modules that are told to stop
+  private double angle0, angle1, angle2, angle3;
+
+  /** @param moduleLocations Exactly four, in the order the arrays will use */
+  public FourModuleSwerveKinematics(Translation2d... moduleLocations) {
+    if (moduleLocations.length != 4) {
+      throw new IllegalArgumentException("Need exactly 4 modules, got " + moduleLocations.length);
+    }
+    x0 = moduleLocations[0].getX();
+    x1 = moduleLocations[1].getX();
+    x2 = moduleLocations[2].getX();
+    x3 = moduleLocations[3].getX();
+    y0 = moduleLocations[0].getY();
+    y1 = moduleLocations[1].getY();
+    y2 = moduleLocations[2].getY();
+    y3 = moduleLocations[3].getY();
+  }
+
+  /**
+   * Same as SwerveDriveKinematics.toSwerveModuleStates. Modules keep their last angle when the
+   * chassis is told to stop.
+   *
+   * @param speedsOut Meters per second
+   * @param anglesOut Degrees
+   */
+  public void toModuleStates(
+      double vx, double vy, double omega, double[] speedsOut, double[] anglesOut) {
+    if (vx == 0 && vy == 0 && omega == 0) {
+      speedsOut[0] = 0;
+      speedsOut[1] = 0;
+      speedsOut[2] = 0;
+      speedsOut[3] = 0;
+    } else {
+      double m0x = vx - omega * y0;
+      double m0y = vy + omega * x0;
+      double m1x = vx - omega * y1;
+      double m1y = vy + omega * x1;
+      double m2x = vx - omega * y2;
+      double m2y = vy + omega * x2;
+      double m3x = vx - omega * y3;
+      double m3y = vy + omega * x3;
+      speedsOut[0] = Math.hypot(m0x, m0y);
+      speedsOut[1] = Math.hypot(m1x, m1y);
+      speedsOut[2] = Math.hypot(m2x, m2y);
+      speedsOut[3] = Math.hypot(m3x, m3y);
+      angle0 = angleOf(m0x, m0y);
+      angle1 = angleOf(m1x, m1y);
+      angle2 = angleOf(m2x, m2y);
+      angle3 = angleOf(m3x, m3y);
+    }
+    anglesOut[0] = angle0;
+    anglesOut[1] = angle1;
+    anglesOut[2] = angle2;
+    anglesOut[3] = angle3;
+  }
+
+  /** Rotation2d(x, y).getDegrees(), which is 0 for a zero vector */
+  private static double angleOf(double x, double y) {
+    double magnitude = Math.hypot(x, y);
+    if (magnitude > 1e-6) {
+      return Math.toDegrees(Math.atan2(y / magnitude, x / magnitude));
+    }
+    return 0;
+  }
+
+  /**
+   * What SwerveDriveKinematics.desaturateWheelSpeeds (the chassis speeds version) would scale the
+   * module speeds for these chassis speeds by, without working out the module states. Compares
+   * squared speeds, so there is one square root instead of four.
+   */
+  public double desaturationScale(
+      double vx,
+      double vy,
+      double omega,
+      double attainableMaxModuleSpeed,
+      double attainableMaxTranslationalSpeed,
+      double attainableMaxRotationalVelocity) {
+    double m0x = vx - omega * y0;
+    double m0y = vy + omega * x0;
+    double m1x = vx - omega * y1;
+    double m1y = vy + omega * x1;
+    double m2x = vx - omega * y2;
+    double m2y = vy + omega * x2;
+    double m3x = vx - omega * y3;
+    double m3y = vy + omega * x3;
+    double max0 = Math.max(m0x * m0x + m0y * m0y, m1x * m1x + m1y * m1y);
+    double max1 = Math.max(m2x * m2x + m2y * m2y, m3x * m3x + m3y * m3y);
+    double realMaxSpeed = Math.sqrt(Math.max(max0, max1));
+    if (attainableMaxTranslationalSpeed == 0
+        || attainableMaxRotationalVelocity == 0
+        || realMaxSpeed == 0) {
+      return 1;
+    }
+    double translationalK = Math.hypot(vx, vy) / attainableMaxTranslationalSpeed;
+    double rotationalK = Math.abs(omega) / attainableMaxRotationalVelocity;
+    double k = Math.max(translationalK, rotationalK);
+    return Math.min(k * attainableMaxModuleSpeed / realMaxSpeed, 1);
+  }
+
+  /**
+   * {@link #toModuleStates} followed by desaturation, in one pass.
+   *
+   * @return The factor the module speeds were scaled by
+   */
+  public double toDesaturatedModuleStates(
+      double vx,
+      double vy,
+      double omega,
+      double attainableMaxModuleSpeed,
+      double attainableMaxTranslationalSpeed,
+      double attainableMaxRotationalVelocity,
+      double[] speedsOut,
+      double[] anglesOut) {
+    double scale =
+        desaturationScale(
+            vx,
+            vy,
+            omega,
+            attainableMaxModuleSpeed,
+            attainableMaxTranslationalSpeed,
+            attainableMaxRotationalVelocity);
+    // Scaling the chassis speeds scales every module speed by the same factor and leaves the
+    // angles alone, except for a chassis scaled to exactly 0, which can't happen for scale > 0
+    toModuleStates(vx * scale, vy * scale, omega * scale, speedsOut, anglesOut);
+    return scale;
+  }
+}
@@ -0,0 +1,34 @@
+package frc.lib.math;
+
+/**
+ * Slope of the least squares line through the last few samples. Noise drops with the square root
+ * of the window, but the estimate lags a changing rate by about half the window.
+ */
+public class LinearRegressionDerivative extends WindowedDerivative {
+  /** @param windowSize How many samples to fit, at least 2 */
+  public LinearRegressionDerivative(int windowSize) {
+    super(windowSize, 2);
+  }
+
+  @Override
+  protected void fit(double[] times, double[] values, int n, double[] out) {
+    double meanT = 0;
+    double meanV = 0;
+    for (int i = 0; i < n; i++) {
+      meanT += times[i];
+      meanV += values[i];
+    }
+    meanT /= n;
+    meanV /= n;
+    double stt = 0;
+    double stv = 0;
+    for (int i = 0; i < n; i++) {
+      double dt = times[i] - meanT;
+      stt += dt * dt;
+      stv += dt * (values[i] - meanV);
+    }
+    double slope = stv / stt;
+    out[0] = meanV - slope * meanT;
+    out[1] = slope;
+  }
+}
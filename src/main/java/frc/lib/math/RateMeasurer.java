@@ -2,24 +2,39 @@ package frc.lib.math;
 
 import edu.wpi.first.wpilibj.Timer;
 
-public class RateMeasurer {
+/**
+ * Difference between the last two samples over the time between them. Very noisy, see {@link
+ * LinearRegressionDerivative}, {@link SavitzkyGolayDerivative} and {@link AlphaBetaFilter} for
+ * estimators that aren't.
+ */
+public class RateMeasurer implements DerivativeEstimator {
   double previousMeasurement;
-  Timer measurementTimer = new Timer();
+  double previousTimestamp = Double.NaN;
   double rate;
 
   public void init(double measurement) {
     previousMeasurement = measurement;
-    measurementTimer.start();
+    previousTimestamp = Timer.getFPGATimestamp();
   }
 
+  /** Same as {@link #addSample(double, double)} at the current time */
   public void addMeasurement(double measurement) {
-    double lastPreviousMeasurement = previousMeasurement;
-    previousMeasurement = measurement;
-    double time = measurementTimer.get();
-    measurementTimer.reset();
-    rate = (measurement - lastPreviousMeasurement) / time;
+    addSample(Timer.getFPGATimestamp(), measurement);
+  }
+
+  @Override
+  public void addSample(double timestampSeconds, double value) {
+    if (timestampSeconds <= previousTimestamp) {
+      return;
+    }
+    if (!Double.isNaN(previousTimestamp)) {
+      rate = (value - previousMeasurement) / (timestampSeconds - previousTimestamp);
+    }
+    previousMeasurement = value;
+    previousTimestamp = timestampSeconds;
   }
 
+  @Override
   public double getRate() {
     return rate;
   }
@@ -28,4 +43,16 @@ public class RateMeasurer {
     addMeasurement(measurement);
     return getRate();
   }
+
+  @Override
+  public double getValue() {
+    return previousMeasurement;
+  }
+
+  @Override
+  public void reset() {
+    previousMeasurement = 0;
+    previousTimestamp = Double.NaN;
+    rate = 0;
+  }
 }
@@ -0,0 +1,47 @@
+package frc.lib.math;
+
+/**
+ * Savitzky-Golay style derivative: fits a parabola to the last few samples and takes its slope at
+ * the newest one. Unlike a straight line it follows a rate that is changing without lagging, at
+ * the cost of more noise for the same window.
+ *
+ * <p>The textbook filter precomputes convolution weights for evenly spaced samples. Timestamps
+ * here jitter, so the fit is solved from the actual times instead, which is the same thing when
+ * they are evenly spaced.
+ */
+public class SavitzkyGolayDerivative extends WindowedDerivative {
+  /** @param windowSize How many samples to fit, at least 3 */
+  public SavitzkyGolayDerivative(int windowSize) {
+    super(windowSize, 3);
+  }
+
+  @Override
+  protected void fit(double[] times, double[] values, int n, double[] out) {
+    // Normal equations for v = a + b*t + c*t^2
+    double s1 = 0;
+    double s2 = 0;
+    double s3 = 0;
+    double s4 = 0;
+    double v0 = 0;
+    double v1 = 0;
+    double v2 = 0;
+    for (int i = 0; i < n; i++) {
+      double t = times[i];
+      double t2 = t * t;
+      s1 += t;
+      s2 += t2;
+      s3 += t2 * t;
+      s4 += t2 * t2;
+      v0 += values[i];
+      v1 += values[i] * t;
+      v2 += values[i] * t2;
+    }
+    // Cramer's rule on [[n, s1, s2], [s1, s2, s3], [s2, s3, s4]]
+    double m00 = s2 * s4 - s3 * s3;
+    double m01 = s1 * s4 - s3 * s2;
+    double m02 = s1 * s3 - s2 * s2;
+    double determinant = n * m00 - s1 * m01 + s2 * m02;
+    out[0] = (v0 * m00 - s1 * (v1 * s4 - s3 * v2) + s2 * (v1 * s3 - s2 * v2)) / determinant;
+    out[1] = (n * (v1 * s4 - s3 * v2) - v0 * m01 + s2 * (s1 * v2 - v1 * s2)) / determinant;
+  }
+}
@@ -0,0 +1,109 @@
+package frc.lib.math;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Swerve kinematics that also look at where the chassis is going, not just where it is. Besides the
+ * module states for a chassis velocity, it gives how fast each module's speed and angle are
+ * changing for a chassis acceleration, so the modules can be fed forward instead of chasing a
+ * setpoint that moves every loop.
+ *
+ * <p>The big one is translating while rotating: even at a constant field velocity the velocity
+ * relative to the robot keeps turning, so every module has to keep turning at minus the chassis
+ * rate. Without a feedforward the azimuth PID only reacts once it is behind, and the wheels skew.
+ *
+ * <p>Everything is robot relative. Accelerations are the real (field) acceleration of the chassis
+ * expressed in robot coordinates, which is what a path gives. The rotation of the robot's frame is
+ * handled here. Nothing allocates.
+ */
+public class SecondOrderSwerveKinematics {
+  // Modules slower than this don't have a meaningful turning rate
+  private static final double stoppedSpeed = 1e-3;
+
+  private final double[] moduleX;
+  private final double[] moduleY;
+
+  public SecondOrderSwerveKinematics(Translation2d... moduleLocations) {
+    moduleX = new double[moduleLocations.length];
+    moduleY = new double[moduleLocations.length];
+    for (int i = 0; i < moduleLocations.length; i++) {
+      moduleX[i] = moduleLocations[i].getX();
+      moduleY[i] = moduleLocations[i].getY();
+    }
+  }
+
+  /**
+   * Module states and their rates of change for a chassis velocity and acceleration. Modules that
+   * would be stopped keep the angle already in anglesOut.
+   *
+   * @param omega Radians per second
+   * @param alpha Radians per second squared
+   * @param speedsOut Meters per second
+   * @param anglesOut Degrees
+   * @param accelerationsOut Meters per second squared, along the module angle
+   * @param angleVelocitiesOut Degrees per second
+   */
+  public void toModuleStates(
+      double vx,
+      double vy,
+      double omega,
+      double ax,
+      double ay,
+      double alpha,
+      double[] speedsOut,
+      double[] anglesOut,
+      double[] accelerationsOut,
+      double[] angleVelocitiesOut) {
+    for (int i = 0; i < moduleX.length; i++) {
+      double moduleVx = vx - omega * moduleY[i];
+      double moduleVy = vy + omega * moduleX[i];
+      speedsOut[i] = Math.hypot(moduleVx, moduleVy);
+      if (speedsOut[i] > stoppedSpeed) {
+        anglesOut[i] = Math.toDegrees(Math.atan2(moduleVy, moduleVx));
+      }
+    }
+    toModuleFeedforward(
+        vx, vy, omega, ax, ay, alpha, speedsOut, anglesOut, accelerationsOut, angleVelocitiesOut);
+  }
+
+  /**
+   * Rates of change for module setpoints that already exist, e.g. from a setpoint generator. Speeds
+   * can be negative (module flipped), the acceleration then comes out along the flipped angle.
+   *
+   * @param speeds Module setpoint speeds, meters per second
+   * @param anglesDegrees Module setpoint angles
+   * @param accelerationsOut Meters per second squared, along the module angle
+   * @param angleVelocitiesOut Degrees per second
+   */
+  public void toModuleFeedforward(
+      double vx,
+      double vy,
+      double omega,
+      double ax,
+      double ay,
+      double alpha,
+      double[] speeds,
+      double[] anglesDegrees,
+      double[] accelerationsOut,
+      double[] angleVelocitiesOut) {
+    // How the chassis velocity changes as seen from the robot: the real acceleration minus the
+    // frame turning under it (omega x v)
+    double frameAx = ax + omega * vy;
+    double frameAy = ay - omega * vx;
+    for (int i = 0; i < moduleX.length; i++) {
+      // Module positions don't move relative to the robot, so only alpha x r adds to that
+      double moduleAx = frameAx - alpha * moduleY[i];
+      double moduleAy = frameAy + alpha * moduleX[i];
+      double angle = Math.toRadians(anglesDegrees[i]);
+      double cos = Math.cos(angle);
+      double sin = Math.sin(angle);
+      accelerationsOut[i] = moduleAx * cos + moduleAy * sin;
+      // The sideways part turns the module, faster the slower it goes
+      if (Math.abs(speeds[i]) > stoppedSpeed) {
+        angleVelocitiesOut[i] = Math.toDegrees((moduleAy * cos - moduleAx * sin) / speeds[i]);
+      } else {
+        angleVelocitiesOut[i] = 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package frc.lib.math;
+
+/**
+ * Keeps the last few samples in a ring buffer and fits a polynomial to them by least squares every
+ * time a sample is added. Times are taken relative to the newest sample and divided by the window's
+ * span before fitting, so the FPGA clock being large doesn't cost precision and the fit is well
+ * conditioned whatever the sample rate.
+ */
+public abstract class WindowedDerivative implements DerivativeEstimator {
+  private final int minimumSamples;
+  private final double[] times;
+  private final double[] values;
+  private int count = 0;
+  private int next = 0;
+
+  private double rate = 0;
+  private double value = 0;
+
+  // Handed to fit(), reused for every sample
+  private final double[] relativeTimes;
+  private final double[] windowValues;
+  private final double[] fit = new double[2];
+
+  /**
+   * @param windowSize How many samples to fit
+   * @param minimumSamples Fewest samples fit() can work with
+   */
+  protected WindowedDerivative(int windowSize, int minimumSamples) {
+    if (windowSize < minimumSamples) {
+      throw new IllegalArgumentException("Window needs at least " + minimumSamples + " samples");
+    }
+    this.minimumSamples = minimumSamples;
+    times = new double[windowSize];
+    values = new double[windowSize];
+    relativeTimes = new double[windowSize];
+    windowValues = new double[windowSize];
+  }
+
+  @Override
+  public void addSample(double timestampSeconds, double value) {
+    if (count > 0 && timestampSeconds <= times[(next + times.length - 1) % times.length]) {
+      return;
+    }
+    times[next] = timestampSeconds;
+    values[next] = value;
+    next = (next + 1) % times.length;
+    count = Math.min(count + 1, times.length);
+    if (count < minimumSamples) {
+      this.value = value;
+      rate = 0;
+      return;
+    }
+
+    int oldest = (next + times.length - count) % times.length;
+    double span = timestampSeconds - times[oldest];
+    for (int i = 0; i < count; i++) {
+      int slot = (oldest + i) % times.length;
+      relativeTimes[i] = (times[slot] - timestampSeconds) / span;
+      windowValues[i] = values[slot];
+    }
+    fit(relativeTimes, windowValues, count, fit);
+    this.value = fit[0];
+    // The fit's time unit is the span
+    rate = fit[1] / span;
+  }
+
+  /**
+   * Fits the first n samples. The newest one is at time 0 and the oldest at -1.
+   *
+   * @param out Receives {fitted value, slope} at time 0
+   */
+  protected abstract void fit(double[] times, double[] values, int n, double[] out);
+
+  @Override
+  public double getRate() {
+    return rate;
+  }
+
+  @Override
+  public double getValue() {
+    return value;
+  }
+
+  @Override
+  public void reset() {
+    count = 0;
+    next = 0;
+    rate = 0;
+    value = 0;
+  }
+}
@@ -15,44 +15,44 @@ public class CTREModuleState {
    */
   public static SwerveModuleState optimize(
       SwerveModuleState desiredState, Rotation2d currentAngle) {
-    double targetAngle =
-        placeInAppropriate0To360Scope(currentAngle.getDegrees(), desiredState.angle.getDegrees());
-    double targetSpeed = desiredState.speedMetersPerSecond;
-    double delta = targetAngle - currentAngle.getDegrees();
-    if (Math.abs(delta) > 90) {
-      targetSpeed = -targetSpeed;
-      targetAngle = delta > 90 ? (targetAngle -= 180) : (targetAngle += 180);
-    }
-    return new SwerveModuleState(targetSpeed, Rotation2d.fromDegrees(targetAngle));
+    double[] out = new double[2];
+    optimize(
+        desiredState.speedMetersPerSecond,
+        desiredState.angle.getDegrees(),
+        currentAngle.getDegrees(),
+        out);
+    return new SwerveModuleState(out[0], Rotation2d.fromDegrees(out[1]));
   }
 
   /**
-   * @param scopeReference Current Angle
-   * @param newAngle Target Angle
-   * @return Closest angle within scope
+   * Same as {@link #optimize(SwerveModuleState, Rotation2d)}, but works on plain degrees and writes
+   * into a caller-supplied array so that it can run every loop without allocating.
+   *
+   * <p>Takes the same time however far the current angle has wound up. The target ends up within
+   * 90 degrees of the current angle, with the speed reversed if that meant turning the wheel
+   * around. An exact 90 degree turn is not reversed.
+   *
+   * @param speedMetersPerSecond The desired speed.
+   * @param angleDegrees The desired angle.
+   * @param currentAngleDegrees The current (continuous) module angle.
+   * @param out Receives {speed, angle in degrees}.
+   * @return Whether the speed was reversed.
    */
-  private static double placeInAppropriate0To360Scope(double scopeReference, double newAngle) {
-    double lowerBound;
-    double upperBound;
-    double lowerOffset = scopeReference % 360;
-    if (lowerOffset >= 0) {
-      lowerBound = scopeReference - lowerOffset;
-      upperBound = scopeReference + (360 - lowerOffset);
-    } else {
-      upperBound = scopeReference - lowerOffset;
-      lowerBound = scopeReference - (360 + lowerOffset);
-    }
-    while (newAngle < lowerBound) {
-      newAngle += 360;
-    }
-    while (newAngle > upperBound) {
-      newAngle -= 360;
-    }
-    if (newAngle - scopeReference > 180) {
-      newAngle -= 360;
-    } else if (newAngle - scopeReference < -180) {
-      newAngle += 360;
+  public static boolean optimize(
+      double speedMetersPerSecond,
+      double angleDegrees,
+      double currentAngleDegrees,
+      double[] out) {
+    // Shortest turn to the desired angle, in [-180, 180]. IEEEremainder is exact, so this is what
+    // unwinding the desired angle into the current angle's revolution used to give.
+    double delta = Math.IEEEremainder(angleDegrees - currentAngleDegrees, 360);
+    boolean reversed = Math.abs(delta) > 90;
+    if (reversed) {
+      speedMetersPerSecond = -speedMetersPerSecond;
+      delta -= Math.copySign(180, delta);
     }
-    return newAngle;
+    out[0] = speedMetersPerSecond;
+    out[1] = currentAngleDegrees + delta;
+    return reversed;
   }
 }
@@ -0,0 +1,20 @@
+package frc.lib.util;
+
+import edu.wpi.first.math.geometry.Transform3d;
+
+public class CameraConstants {
+  public final String tableName;
+  public final Transform3d robotToCam;
+
+  /**
+   * Vision camera constants to be used when creating cameras.
+   *
+   * @param tableName NetworkTables table the camera publishes to, e.g. "limelight"
+   * @param robotToCam Where the camera is on the robot. Has to match the camera pose set in the
+   *     Limelight web interface, since that's what botpose is computed with.
+   */
+  public CameraConstants(String tableName, Transform3d robotToCam) {
+    this.tableName = tableName;
+    this.robotToCam = robotToCam;
+  }
+}
@@ -0,0 +1,112 @@
+package frc.lib.util;
+
+import java.util.function.Supplier;
+
+/**
+ * Bounded lock-free queue for handing objects from exactly one producer thread to exactly one
+ * consumer thread. Neither side ever blocks: offer() fails when the queue is full and poll()
+ * returns null when it is empty.
+ *
+ * <p>Each side only writes its own counter. The counters are volatile, so everything the producer
+ * wrote into a slot before bumping the tail is visible to the consumer once it sees the new tail,
+ * and the consumer can't free a slot until it is done with it.
+ *
+ * <p>To hand over values without creating garbage, build it with a factory so every slot holds an
+ * object up front. The producer fills in the object from {@link #claim()} and then calls {@link
+ * #publish()}, the consumer reads the one from {@link #peek()} and then calls {@link #release()}.
+ * Don't mix that with offer() and poll().
+ */
+public class SpscQueue<T> {
+  private final Object[] buffer;
+  private final int mask;
+
+  // Only written by the consumer
+  private volatile long head = 0;
+  // Only written by the producer
+  private volatile long tail = 0;
+
+  /** @param capacity Rounded up to a power of two */
+  public SpscQueue(int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1);
+    buffer = new Object[size];
+    mask = size - 1;
+  }
+
+  /**
+   * Every slot starts out holding an object from factory, for {@link #claim()}.
+   *
+   * @param capacity Rounded up to a power of two
+   */
+  public SpscQueue(int capacity, Supplier<T> factory) {
+    this(capacity);
+    for (int i = 0; i < buffer.length; i++) {
+      buffer[i] = factory.get();
+    }
+  }
+
+  /** Producer only. Returns false (and drops the item) if the queue is full. */
+  public boolean offer(T item) {
+    long t = tail;
+    if (t - head >= buffer.length) {
+      return false;
+    }
+    buffer[(int) (t & mask)] = item;
+    tail = t + 1;
+    return true;
+  }
+
+  /**
+   * Producer only. The object in the next free slot, to be filled in and then handed over with
+   * {@link #publish()}, or null if the queue is full.
+   */
+  @SuppressWarnings("unchecked")
+  public T claim() {
+    long t = tail;
+    if (t - head >= buffer.length) {
+      return null;
+    }
+    return (T) buffer[(int) (t & mask)];
+  }
+
+  /** Producer only. Hands over the object from the last {@link #claim()}. */
+  public void publish() {
+    tail = tail + 1;
+  }
+
+  /** Consumer only. The item poll() would return, without removing it. */
+  @SuppressWarnings("unchecked")
+  public T peek() {
+    long h = head;
+    if (h >= tail) {
+      return null;
+    }
+    return (T) buffer[(int) (h & mask)];
+  }
+
+  /** Consumer only. Returns null if the queue is empty. */
+  @SuppressWarnings("unchecked")
+  public T poll() {
+    long h = head;
+    if (h >= tail) {
+      return null;
+    }
+    int slot = (int) (h & mask);
+    T item = (T) buffer[slot];
+    // Don't keep the item alive after it has been handed out
+    buffer[slot] = null;
+    head = h + 1;
+    return item;
+  }
+
+  /**
+   * Consumer only. Frees the slot of the object {@link #peek()} returned, keeping the object in it
+   * for the producer to fill in again. Don't touch the object after this.
+   */
+  public void release() {
+    head = head + 1;
+  }
+
+  public int capacity() {
+    return buffer.length;
+  }
+}
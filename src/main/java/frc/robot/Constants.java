@@ -9,7 +9,10 @@ import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.math.util.Units;
+import frc.lib.math.FourModuleSwerveKinematics;
+import frc.lib.math.SecondOrderSwerveKinematics;
 import frc.lib.util.COTSFalconSwerveConstants;
+import frc.lib.util.CameraConstants;
 import frc.lib.util.SwerveModuleConstants;
 
 public final class Constants {
@@ -20,15 +23,49 @@ public final class Constants {
 
   public static final class Limelight {
 
-    public static final Transform3d robotToCam =
-        new Transform3d(
-            new Translation3d(
-                -0.082,
-                -0.2105,
-                // 0,
-                0.58),
-            new Rotation3d(0, 0, 0));
+    /* One entry per camera. Each one gets its own processing thread. */
+    public static final CameraConstants[] cameras = {
+      new CameraConstants(
+          "limelight",
+          new Transform3d(
+              new Translation3d(
+                  -0.082,
+                  -0.2105,
+                  // 0,
+                  0.58),
+              new Rotation3d(0, 0, 0)))
+    };
     public static final String camName = "OV5647";
+    // The Limelight tops out around 90fps, so this picks up new frames within a few ms
+    public static final double processingPeriod = 0.005;
+
+    /* Vision measurement trust. Standard deviations grow with the square of the average tag
+     * distance and shrink with the number of tags seen. */
+    public static final double xyStdDevCoefficient = 0.02; // meters, at 1m
+    public static final double thetaStdDevCoefficient = 0.04; // radians, at 1m
+    // A single tag can flip between two poses, so trust it less (and never for heading)
+    public static final double singleTagPenalty = 2.0;
+    // Motion blur, multiplied by (1 + this * angular velocity in rad/s)
+    public static final double angularVelocityPenalty = 0.5;
+    // Used when the pipeline doesn't give target poses to measure the distance with
+    public static final double assumedTagDistance = 4.0;
+
+    /* Rejection */
+    // Horizontal part of the gravity vector, see Swerve.getTiltMagnitude(). About 6 degrees.
+    public static final double maxTiltMagnitude = 0.1;
+    public static final double fieldMargin = 0.5;
+    // Chi-squared for 3 degrees of freedom at 99%
+    public static final double maxMahalanobisSquared = 11.34;
+    // After this many rejections in a row odometry may be the one that's wrong (e.g. before the
+    // starting pose is set). Then a multi-tag measurement is let through if this many multi-tag
+    // measurements in a row agree on how far off odometry is. See VisionGate.
+    public static final int maxConsecutiveOdometryRejections = 25;
+    public static final int agreeingMeasurementsToOverrule = 5;
+  }
+
+  public static final class Field {
+    public static final double length = 16.54;
+    public static final double width = 8.02;
   }
 
   public static final class Swerve {
@@ -47,12 +84,21 @@ public final class Constants {
 
     /* Swerve Kinematics
      * No need to ever change this unless you are not doing a traditional rectangular/square 4 module swerve */
+    public static final Translation2d[] moduleTranslations =
+        new Translation2d[] {
+          new Translation2d(wheelBase / 2.0, trackWidth / 2.0),
+          new Translation2d(wheelBase / 2.0, -trackWidth / 2.0),
+          new Translation2d(-wheelBase / 2.0, trackWidth / 2.0),
+          new Translation2d(-wheelBase / 2.0, -trackWidth / 2.0)
+        };
     public static final SwerveDriveKinematics swerveKinematics =
-        new SwerveDriveKinematics(
-            new Translation2d(wheelBase / 2.0, trackWidth / 2.0),
-            new Translation2d(wheelBase / 2.0, -trackWidth / 2.0),
-            new Translation2d(-wheelBase / 2.0, trackWidth / 2.0),
-            new Translation2d(-wheelBase / 2.0, -trackWidth / 2.0));
+        new SwerveDriveKinematics(moduleTranslations);
+    /* Same thing without the allocations, for the drive loop */
+    public static final FourModuleSwerveKinematics fourModuleKinematics =
+        new FourModuleSwerveKinematics(moduleTranslations);
+    /* Module rates of change for feedforward, see Swerve.drive */
+    public static final SecondOrderSwerveKinematics secondOrderKinematics =
+        new SecondOrderSwerveKinematics(moduleTranslations);
 
     /* Module Gear Ratios */
     public static final double driveGearRatio = chosenModule.driveGearRatio;
@@ -99,6 +145,10 @@ public final class Constants {
     public static final double driveKV = (2.394 / 12);
     public static final double driveKA = (0.304 / 12);
 
+    /* Angle Motor Feedforward, in the same units as above per radian per second of the module.
+     * From the Falcon free speed through the gear ratio, not characterized yet. */
+    public static final double angleKV = (0.385 / 12);
+
     /* Swerve Profiling Values */
     /** Meters per Second */
     // FYI this does not change teleop behavior only auto (or does it ???)
@@ -107,6 +157,49 @@ public final class Constants {
     // WARNING IF YOU TURN THIS TOO HIGH IT TIPS THE BOT AND EXPLODES
     public static final double maxAngularVelocity = 5.0;
 
+    /* Setpoint generator limits, see SwerveSetpointGenerator */
+    // Around what the wheels take before they start slipping
+    public static final double maxDriveAcceleration = 8.0;
+    // Radians per second
+    public static final double maxAzimuthVelocity = Math.toRadians(720);
+    /* Height of the center of mass with the elevator all the way down and all the way up, for the
+     * tipping limit. Estimated high on purpose, measure before trusting them. */
+    public static final double centerOfMassHeightRetracted = 0.3;
+    public static final double centerOfMassHeightExtended = 0.6;
+
+    /* How often the odometry thread samples the modules and gyro, in Hz */
+    public static final double odometryFrequency = 250;
+    /* The drive feedback and gyro status frames are sent this often, to keep up with odometry */
+    public static final int odometryFramePeriodMs = (int) Math.round(1000 / odometryFrequency);
+    /* Phoenix 5 getters return the last received frame, so on average a reading is half a frame
+     * period old. Positions are pushed forward by their velocity times this. */
+    public static final double signalLatency = odometryFramePeriodMs / 1000.0 / 2;
+    /* The azimuth feedback frames only come once per main loop. The module angles change slowly
+     * compared to the drive positions, and pushing them forward by their velocity covers the rest,
+     * so there's no need for four more frames on the bus every odometry period. */
+    public static final int azimuthFramePeriodMs = 20;
+    public static final double azimuthSignalLatency = azimuthFramePeriodMs / 1000.0 / 2;
+    /* Frames the swerve motors don't use get slowed down to free up the bus */
+    public static final int unusedFramePeriodMs = 255;
+    /* How far back Swerve.getPoseHistory() goes */
+    public static final double poseHistorySeconds = 2.0;
+    /* Loops the measured chassis velocity is averaged over. The Falcons already average their
+     * velocity over 100ms, so this is mostly for the gyro. */
+    public static final int velocityFilterTaps = 3;
+    /* Field relative driving turns the joysticks by where the heading will be when the modules act
+     * on them, measured by LatencyEstimator from how the gyro follows the commanded rotation. It
+     * looks for up to this many loops of latency and assumes the default until it has seen enough
+     * turning. */
+    public static final int maxDriveLatencyLoops = 10;
+    public static final double defaultDriveLatency = 0.04;
+    // Radians per second the commanded rotation has to change for a loop to count
+    public static final double driveLatencyMinExcitation = 0.3;
+    public static final int driveLatencyMinSamples = 50;
+
+    /* Tilt rate, from a parabola through this many loops of Swerve.getTiltMagnitude(). A parabola
+     * doesn't lag the way a line does, which matters when the charge station tips. */
+    public static final int tiltRateWindow = 10;
+
     public static final NeutralMode angleNeutralMode = NeutralMode.Brake;
     public static final NeutralMode driveNeutralMode = NeutralMode.Brake;
 
@@ -162,6 +255,8 @@ public final class Constants {
     public static final double inSpeed = 1;
     public static final double ejectSpeed = -.75;
     public static final double stopSpeed = 0;
+    // Current slope, from a line through this many loops of current
+    public static final int currentSlopeWindow = 8;
   }
 
   public static final class Elbow {
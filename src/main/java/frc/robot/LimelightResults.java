@@ -0,0 +1,444 @@
+package frc.robot;
+
+import java.util.Arrays;
+
+/**
+ * Everything in one frame of the Limelight's "json" entry, parsed into preallocated fields. One
+ * instance is reused for every frame: {@link #parse(String)} walks the text in place (no
+ * substrings, no boxed numbers, no maps), so parsing doesn't create any garbage.
+ *
+ * <p>Poses are Limelight arrays: {x, y, z, roll, pitch, yaw} in meters and degrees.
+ */
+public class LimelightResults {
+  /** Fiducials beyond this many are skipped. There are only 8 tags on the field. */
+  public static final int maxFiducials = 16;
+
+  public static class Fiducial {
+    public int id;
+    /** Percent of the image */
+    public double area;
+    /** Degrees from the crosshair */
+    public double tx;
+    public double ty;
+    /** Pixels */
+    public double txPixels;
+    public double tyPixels;
+
+    public final double[] cameraPoseTargetSpace = new double[6];
+    public final double[] robotPoseFieldSpace = new double[6];
+    public final double[] robotPoseTargetSpace = new double[6];
+    public final double[] targetPoseCameraSpace = new double[6];
+    public final double[] targetPoseRobotSpace = new double[6];
+
+    /** Straight line distance from the camera to the tag, in meters */
+    public double getDistance() {
+      double[] t = targetPoseCameraSpace;
+      return Math.sqrt(t[0] * t[0] + t[1] * t[1] + t[2] * t[2]);
+    }
+
+    void clear() {
+      id = 0;
+      area = 0;
+      tx = 0;
+      ty = 0;
+      txPixels = 0;
+      tyPixels = 0;
+      Arrays.fill(cameraPoseTargetSpace, 0);
+      Arrays.fill(robotPoseFieldSpace, 0);
+      Arrays.fill(robotPoseTargetSpace, 0);
+      Arrays.fill(targetPoseCameraSpace, 0);
+      Arrays.fill(targetPoseRobotSpace, 0);
+    }
+
+    void copyFrom(Fiducial other) {
+      id = other.id;
+      area = other.area;
+      tx = other.tx;
+      ty = other.ty;
+      txPixels = other.txPixels;
+      tyPixels = other.tyPixels;
+      System.arraycopy(other.cameraPoseTargetSpace, 0, cameraPoseTargetSpace, 0, 6);
+      System.arraycopy(other.robotPoseFieldSpace, 0, robotPoseFieldSpace, 0, 6);
+      System.arraycopy(other.robotPoseTargetSpace, 0, robotPoseTargetSpace, 0, 6);
+      System.arraycopy(other.targetPoseCameraSpace, 0, targetPoseCameraSpace, 0, 6);
+      System.arraycopy(other.targetPoseRobotSpace, 0, targetPoseRobotSpace, 0, 6);
+    }
+  }
+
+  public boolean valid;
+  public int pipelineIndex;
+  /** Milliseconds, on the Limelight's clock */
+  public double timestamp;
+  /** Milliseconds */
+  public double captureLatency;
+  public double targetingLatency;
+
+  public final double[] botpose = new double[6];
+  public final double[] botposeWpiBlue = new double[6];
+  public final double[] botposeWpiRed = new double[6];
+
+  public int fiducialCount;
+  public final Fiducial[] fiducials = new Fiducial[maxFiducials];
+
+  // Parser state
+  private String json;
+  private int pos;
+  // The last key read, end exclusive
+  private int keyStart;
+  private int keyEnd;
+
+  public LimelightResults() {
+    for (int i = 0; i < fiducials.length; i++) {
+      fiducials[i] = new Fiducial();
+    }
+  }
+
+  /** Total latency from the image being captured to the results being published, in seconds */
+  public double getLatencySeconds() {
+    return (captureLatency + targetingLatency) / 1000.0;
+  }
+
+  /** Average camera to tag distance over every fiducial, in meters. 0 with no fiducials. */
+  public double getAverageTagDistance() {
+    if (fiducialCount == 0) {
+      return 0;
+    }
+    double sum = 0;
+    for (int i = 0; i < fiducialCount; i++) {
+      sum += fiducials[i].getDistance();
+    }
+    return sum / fiducialCount;
+  }
+
+  public void copyFrom(LimelightResults other) {
+    valid = other.valid;
+    pipelineIndex = other.pipelineIndex;
+    timestamp = other.timestamp;
+    captureLatency = other.captureLatency;
+    targetingLatency = other.targetingLatency;
+    System.arraycopy(other.botpose, 0, botpose, 0, 6);
+    System.arraycopy(other.botposeWpiBlue, 0, botposeWpiBlue, 0, 6);
+    System.arraycopy(other.botposeWpiRed, 0, botposeWpiRed, 0, 6);
+    fiducialCount = other.fiducialCount;
+    for (int i = 0; i < fiducialCount; i++) {
+      fiducials[i].copyFrom(other.fiducials[i]);
+    }
+  }
+
+  private void clear() {
+    valid = false;
+    pipelineIndex = 0;
+    timestamp = 0;
+    captureLatency = 0;
+    targetingLatency = 0;
+    Arrays.fill(botpose, 0);
+    Arrays.fill(botposeWpiBlue, 0);
+    Arrays.fill(botposeWpiRed, 0);
+    fiducialCount = 0;
+  }
+
+  /**
+   * Replaces the contents with a frame from the "json" entry.
+   *
+   * @return False if the text isn't valid JSON, in which case the frame is marked not valid
+   */
+  public boolean parse(String text) {
+    clear();
+    if (text == null) {
+      return false;
+    }
+    json = text;
+    pos = 0;
+    try {
+      parseResults();
+      return true;
+    } catch (IllegalArgumentException e) {
+      // Only happens on a broken frame, so the exception's garbage doesn't matter
+      clear();
+      return false;
+    } finally {
+      json = null;
+    }
+  }
+
+  /** The top level object. Some firmware wraps everything in "Results", so this recurses. */
+  private void parseResults() {
+    expect('{');
+    if (consumeIf('}')) {
+      return;
+    }
+    do {
+      readKey();
+      if (keyIs("Results")) {
+        parseResults();
+      } else if (keyIs("v")) {
+        valid = readNumber() != 0;
+      } else if (keyIs("pID")) {
+        pipelineIndex = (int) readNumber();
+      } else if (keyIs("ts")) {
+        timestamp = readNumber();
+      } else if (keyIs("cl")) {
+        captureLatency = readNumber();
+      } else if (keyIs("tl")) {
+        targetingLatency = readNumber();
+      } else if (keyIs("botpose")) {
+        readNumbers(botpose);
+      } else if (keyIs("botpose_wpiblue")) {
+        readNumbers(botposeWpiBlue);
+      } else if (keyIs("botpose_wpired")) {
+        readNumbers(botposeWpiRed);
+      } else if (keyIs("Fiducial")) {
+        parseFiducials();
+      } else {
+        skipValue();
+      }
+    } while (consumeIf(','));
+    expect('}');
+  }
+
+  private void parseFiducials() {
+    expect('[');
+    if (consumeIf(']')) {
+      return;
+    }
+    do {
+      if (fiducialCount < maxFiducials) {
+        parseFiducial(fiducials[fiducialCount++]);
+      } else {
+        skipValue();
+      }
+    } while (consumeIf(','));
+    expect(']');
+  }
+
+  private void parseFiducial(Fiducial fiducial) {
+    fiducial.clear();
+    expect('{');
+    if (consumeIf('}')) {
+      return;
+    }
+    do {
+      readKey();
+      if (keyIs("fID")) {
+        fiducial.id = (int) readNumber();
+      } else if (keyIs("ta")) {
+        fiducial.area = readNumber();
+      } else if (keyIs("tx")) {
+        fiducial.tx = readNumber();
+      } else if (keyIs("ty")) {
+        fiducial.ty = readNumber();
+      } else if (keyIs("txp")) {
+        fiducial.txPixels = readNumber();
+      } else if (keyIs("typ")) {
+        fiducial.tyPixels = readNumber();
+      } else if (keyIs("t6c_ts")) {
+        readNumbers(fiducial.cameraPoseTargetSpace);
+      } else if (keyIs("t6r_fs")) {
+        readNumbers(fiducial.robotPoseFieldSpace);
+      } else if (keyIs("t6r_ts")) {
+        readNumbers(fiducial.robotPoseTargetSpace);
+      } else if (keyIs("t6t_cs")) {
+        readNumbers(fiducial.targetPoseCameraSpace);
+      } else if (keyIs("t6t_rs")) {
+        readNumbers(fiducial.targetPoseRobotSpace);
+      } else {
+        skipValue();
+      }
+    } while (consumeIf(','));
+    expect('}');
+  }
+
+  /* Tokenizer. Everything works on indices into json. */
+
+  private void skipWhitespace() {
+    while (pos < json.length() && json.charAt(pos) <= ' ') {
+      pos++;
+    }
+  }
+
+  private void expect(char c) {
+    skipWhitespace();
+    if (pos >= json.length() || json.charAt(pos) != c) {
+      throw new IllegalArgumentException("Expected " + c + " at " + pos);
+    }
+    pos++;
+  }
+
+  private boolean consumeIf(char c) {
+    skipWhitespace();
+    if (pos < json.length() && json.charAt(pos) == c) {
+      pos++;
+      return true;
+    }
+    return false;
+  }
+
+  /** Reads "key": and remembers where the key is, for {@link #keyIs(String)} */
+  private void readKey() {
+    expect('"');
+    keyStart = pos;
+    // Keys never have escapes in them
+    keyEnd = json.indexOf('"', pos);
+    if (keyEnd < 0) {
+      throw new IllegalArgumentException("Unterminated key at " + keyStart);
+    }
+    pos = keyEnd + 1;
+    expect(':');
+  }
+
+  private boolean keyIs(String key) {
+    int length = keyEnd - keyStart;
+    return length == key.length() && json.regionMatches(keyStart, key, 0, length);
+  }
+
+  /** Reads a number without allocating. true/false/null read as 1/0/0. */
+  private double readNumber() {
+    skipWhitespace();
+    if (pos >= json.length()) {
+      throw new IllegalArgumentException("Expected a number at " + pos);
+    }
+    char c = json.charAt(pos);
+    if (c == 't' || c == 'f' || c == 'n') {
+      skipValue();
+      return c == 't' ? 1 : 0;
+    }
+    boolean negative = false;
+    if (c == '-') {
+      negative = true;
+      pos++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean any = false;
+    while (pos < json.length() && isDigit(json.charAt(pos))) {
+      if (digits < 18) {
+        mantissa = mantissa * 10 + (json.charAt(pos) - '0');
+        if (mantissa != 0) {
+          digits++;
+        }
+      } else {
+        exponent++;
+      }
+      pos++;
+      any = true;
+    }
+    if (pos < json.length() && json.charAt(pos) == '.') {
+      pos++;
+      while (pos < json.length() && isDigit(json.charAt(pos))) {
+        if (digits < 18) {
+          mantissa = mantissa * 10 + (json.charAt(pos) - '0');
+          if (mantissa != 0) {
+            digits++;
+          }
+          exponent--;
+        }
+        pos++;
+        any = true;
+      }
+    }
+    if (!any) {
+      throw new IllegalArgumentException("Expected a number at " + pos);
+    }
+    if (pos < json.length() && (json.charAt(pos) == 'e' || json.charAt(pos) == 'E')) {
+      pos++;
+      boolean negativeExponent = false;
+      if (pos < json.length() && (json.charAt(pos) == '+' || json.charAt(pos) == '-')) {
+        negativeExponent = json.charAt(pos) == '-';
+        pos++;
+      }
+      int value = 0;
+      while (pos < json.length() && isDigit(json.charAt(pos))) {
+        value = Math.min(value * 10 + (json.charAt(pos) - '0'), 1000);
+        pos++;
+      }
+      exponent += negativeExponent ? -value : value;
+    }
+    double result = scale(mantissa, exponent);
+    return negative ? -result : result;
+  }
+
+  private static final double[] powersOfTen = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+    1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private static double scale(long mantissa, int exponent) {
+    if (mantissa == 0) {
+      return 0;
+    }
+    // The powers of ten in the table are exact, so with a mantissa below 2^53 (15 digits) only the
+    // multiply or divide rounds and the result is correctly rounded. Longer mantissas (up to 18
+    // digits are kept) already round when converted to a double, and exponents past the table
+    // round more than once, so those can come out a few ulps off Double.parseDouble. That is far
+    // below anything the Limelight measures.
+    if (exponent >= 0 && exponent < powersOfTen.length) {
+      return mantissa * powersOfTen[exponent];
+    } else if (exponent < 0 && -exponent < powersOfTen.length) {
+      return mantissa / powersOfTen[-exponent];
+    } else if (exponent < 0) {
+      // The power of ten on its own can overflow even when the result doesn't underflow
+      return mantissa / powersOfTen[22] / Math.pow(10, -exponent - 22);
+    }
+    return mantissa * Math.pow(10, exponent);
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /** Reads an array of numbers into out. Extra elements are skipped, missing ones are zeroed. */
+  private void readNumbers(double[] out) {
+    expect('[');
+    int count = 0;
+    if (!consumeIf(']')) {
+      do {
+        double value = readNumber();
+        if (count < out.length) {
+          out[count] = value;
+        }
+        count++;
+      } while (consumeIf(','));
+      expect(']');
+    }
+    for (int i = count; i < out.length; i++) {
+      out[i] = 0;
+    }
+  }
+
+  /** Skips over any value (object, array, string, number, literal) */
+  private void skipValue() {
+    skipWhitespace();
+    if (pos >= json.length()) {
+      throw new IllegalArgumentException("Expected a value at " + pos);
+    }
+    char c = json.charAt(pos);
+    if (c == '{' || c == '[') {
+      char close = c == '{' ? '}' : ']';
+      pos++;
+      if (consumeIf(close)) {
+        return;
+      }
+      do {
+        if (c == '{') {
+          readKey();
+        }
+        skipValue();
+      } while (consumeIf(','));
+      expect(close);
+    } else if (c == '"') {
+      pos++;
+      while (pos < json.length() && json.charAt(pos) != '"') {
+        // Skip the escaped character too
+        pos += json.charAt(pos) == '\\' ? 2 : 1;
+      }
+      expect('"');
+    } else if (c == 't' || c == 'f' || c == 'n') {
+      while (pos < json.length() && Character.isLetter(json.charAt(pos))) {
+        pos++;
+      }
+    } else {
+      readNumber();
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package frc.robot;
+
+import com.ctre.phoenix.sensors.WPI_Pigeon2;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Samples the swerve module positions and the gyro yaw on a separate thread, much faster than the
+ * 20ms scheduler loop. Samples are stored with their timestamps in a preallocated ring buffer and
+ * then drained into the pose estimator by Swerve. This lets odometry integrate quick direction
+ * changes and collisions that would otherwise fall between two loops.
+ *
+ * <p>Every signal is read back to back in one pass so that a sample is as consistent as Phoenix 5
+ * allows, and positions are pushed forward by their velocity to make up for the average age of the
+ * status frame they came from (see Constants.Swerve.signalLatency and azimuthSignalLatency).
+ *
+ * <p>There is exactly one producer (the notifier thread) and one consumer (whoever calls drain), so
+ * the buffer doesn't need any locks.
+ */
+public class OdometryThread {
+  /** Must be a power of two. At 250Hz this holds 128ms of samples. */
+  public static final int bufferSize = 32;
+
+  private static final int mask = bufferSize - 1;
+
+  /** Called for every drained sample. Arrays are reused, so don't hold onto them. */
+  public interface SampleConsumer {
+    void accept(
+        double timestampSeconds, double yawDegrees, double[] distances, double[] angleDegrees);
+  }
+
+  private final SwerveModule[] modules;
+  private final WPI_Pigeon2 gyro;
+  private final Notifier notifier;
+  private final double periodSeconds;
+
+  private final double[] timestamps = new double[bufferSize];
+  private final double[] yaws = new double[bufferSize];
+  private final double[][] distances;
+  private final double[][] angles;
+
+  // Only written by the notifier thread. Volatile so that every slot write before it is visible to
+  // the consumer once the new count is seen.
+  private volatile long writeCount = 0;
+  // Samples whose slot writes have started, one ahead of writeCount while a sample is being
+  // written. Lets the consumer tell that a slot it just copied was being overwritten, like the
+  // odd sequence numbers of PoseHistory's seqlock.
+  private volatile long startedCount = 0;
+  // Only touched by the consumer
+  private long readCount = 0;
+  private long droppedSamples = 0;
+
+  // Scratch arrays for the notifier thread
+  private final double[] driveVelocities;
+  private final double[] angleVelocities;
+  private final double[] rawGyro = new double[3];
+
+  // Scratch arrays handed to the consumer
+  private final double[] sampleDistances;
+  private final double[] sampleAngles;
+
+  public OdometryThread(SwerveModule[] modules, WPI_Pigeon2 gyro, double frequencyHz) {
+    this.modules = modules;
+    this.gyro = gyro;
+    this.periodSeconds = 1.0 / frequencyHz;
+    distances = new double[modules.length][bufferSize];
+    angles = new double[modules.length][bufferSize];
+    driveVelocities = new double[modules.length];
+    angleVelocities = new double[modules.length];
+    sampleDistances = new double[modules.length];
+    sampleAngles = new double[modules.length];
+
+    notifier = new Notifier(this::sample);
+    notifier.setName("Odometry");
+  }
+
+  public void start() {
+    notifier.startPeriodic(periodSeconds);
+  }
+
+  public void stop() {
+    notifier.stop();
+  }
+
+  /** Runs on the notifier thread */
+  private void sample() {
+    long count = writeCount;
+    int slot = (int) (count & mask);
+    startedCount = count + 1;
+    // The slot writes below can't be seen before startedCount
+    VarHandle.storeStoreFence();
+    // Read everything back to back first, so that the sample is as close to one instant as we can
+    // get
+    for (int i = 0; i < modules.length; i++) {
+      distances[i][slot] = modules[i].readDriveDistanceMeters();
+      driveVelocities[i] = modules[i].readDriveVelocityMPS();
+      angles[i][slot] = modules[i].readAngleDegrees();
+      angleVelocities[i] = modules[i].readAngleVelocityDegreesPerSecond();
+    }
+    double yaw = gyro.getYaw();
+    gyro.getRawGyro(rawGyro);
+    double timestamp = Timer.getFPGATimestamp();
+
+    // Latency compensation
+    double latency = Constants.Swerve.signalLatency;
+    double azimuthLatency = Constants.Swerve.azimuthSignalLatency;
+    for (int i = 0; i < modules.length; i++) {
+      distances[i][slot] += driveVelocities[i] * latency;
+      angles[i][slot] += angleVelocities[i] * azimuthLatency;
+    }
+    yaws[slot] = yaw + rawGyro[2] * latency;
+    timestamps[slot] = timestamp;
+    writeCount = count + 1;
+  }
+
+  /**
+   * Hands every sample taken since the last call to the consumer, oldest first. If the consumer
+   * fell more than a whole buffer behind, the oldest samples are dropped.
+   *
+   * @return The number of samples drained
+   */
+  public int drain(SampleConsumer consumer) {
+    long available = writeCount;
+    if (available - readCount > bufferSize) {
+      droppedSamples += available - readCount - bufferSize;
+      readCount = available - bufferSize;
+    }
+    int drained = 0;
+    while (readCount < available) {
+      int slot = (int) (readCount & mask);
+      double timestamp = timestamps[slot];
+      double yaw = yaws[slot];
+      for (int i = 0; i < modules.length; i++) {
+        sampleDistances[i] = distances[i][slot];
+        sampleAngles[i] = angles[i][slot];
+      }
+      // The producer may have lapped us while we were copying, in which case the slot is garbage.
+      // Overwriting it starts with sample readCount + bufferSize. The copy above may not be moved
+      // after the check.
+      VarHandle.acquireFence();
+      if (startedCount - readCount > bufferSize) {
+        droppedSamples++;
+        readCount++;
+        continue;
+      }
+      consumer.accept(timestamp, yaw, sampleDistances, sampleAngles);
+      readCount++;
+      drained++;
+    }
+    return drained;
+  }
+
+  /** Throws away every sample that hasn't been drained yet, e.g. when resetting odometry. */
+  public void discard() {
+    readCount = writeCount;
+  }
+
+  public long getDroppedSamples() {
+    return droppedSamples;
+  }
+}
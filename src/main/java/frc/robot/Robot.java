@@ -4,9 +4,12 @@
 
 package frc.robot;
 
+import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.Telemetry;
 
 /**
  * The VM is configured to automatically run this class, and to call the functions corresponding to
@@ -27,10 +30,14 @@ public class Robot extends TimedRobot {
    */
   @Override
   public void robotInit() {
+    DataLogManager.start();
     ctreConfigs = new CTREConfigs();
+    // The profiler has to hook the button loop on both sides of the bindings made by RobotContainer
+    Runnable bindingsDone = LoopProfiler.install();
     // Instantiate our RobotContainer.  This will perform all our button bindings, and put our
     // autonomous chooser on the dashboard.
     m_robotContainer = new RobotContainer(this);
+    bindingsDone.run();
   }
 
   /**
@@ -46,7 +53,11 @@ public class Robot extends TimedRobot {
     // commands, running already-scheduled commands, removing finished or interrupted commands,
     // and running subsystem periodic() methods.  This must be called from the robot's periodic
     // block in order for anything in the Command-based framework to work.
+    Telemetry.beginLoop();
+    LoopProfiler.beginLoop();
     CommandScheduler.getInstance().run();
+    LoopProfiler.endLoop();
+    Telemetry.endLoop();
   }
 
   /** This function is called once each time the robot enters Disabled mode. */
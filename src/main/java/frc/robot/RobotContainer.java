@@ -2,8 +2,10 @@ package frc.robot;
 
 import com.pathplanner.lib.PathConstraints;
 import com.pathplanner.lib.PathPlanner;
+import com.pathplanner.lib.PathPlannerTrajectory;
 import com.pathplanner.lib.auto.PIDConstants;
 import com.pathplanner.lib.auto.SwerveAutoBuilder;
+import com.pathplanner.lib.commands.PPSwerveControllerCommand;
 import com.pathplanner.lib.server.PathPlannerServer;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.wpilibj.DriverStation;
@@ -11,6 +13,7 @@ import edu.wpi.first.wpilibj.Filesystem;
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandBase;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.InstantCommand;
 import edu.wpi.first.wpilibj2.command.button.CommandGenericHID;
@@ -21,9 +24,9 @@ import java.nio.file.Files;
 import java.util.HashMap;
 
 public class RobotContainer {
-  public final Swerve s_Swerve = new Swerve();
-  public final Intake s_Intake = new Intake();
   public final Elevator s_Elevator = new Elevator();
+  public final Swerve s_Swerve = new Swerve(s_Elevator::getPositionPercent);
+  public final Intake s_Intake = new Intake();
   public final Elbow s_Elbow = new Elbow(s_Elevator::getPositionPercent);
   public final LED s_LED = new LED();
   private SwerveAutoBuilder autoBuilder;
@@ -165,17 +168,26 @@ public class RobotContainer {
             Constants.AutoConstants.kThetaControllerConstraints);
     thetaController.enableContinuousInput(-Math.PI, Math.PI);*/
 
+    // Lets Swerve feed the path's acceleration forward
+    PPSwerveControllerCommand.setLoggingCallbacks(s_Swerve::setActiveTrajectory, null, null, null);
     autoBuilder =
         new SwerveAutoBuilder(
             s_Swerve::getPose,
             s_Swerve::resetOdometry,
-            Constants.Swerve.swerveKinematics,
             new PIDConstants(4.0, 0.0, 0.3),
             new PIDConstants(4.0, 0.0, 0.3),
-            s_Swerve::setModuleStates,
+            // Chassis speeds rather than module states, so paths go through the setpoint generator
+            s_Swerve::driveRobotRelative,
             eventMap,
             true, // Automatically mirror path based on alliance
-            s_Swerve);
+            s_Swerve) {
+          @Override
+          public CommandBase followPath(PathPlannerTrajectory trajectory) {
+            // Stops feeding the path's acceleration forward as soon as the path is done
+            return super.followPath(trajectory)
+                .finallyDo(interrupted -> s_Swerve.clearActiveTrajectory());
+          }
+        };
   }
 
   private void populateAutoChooser() {
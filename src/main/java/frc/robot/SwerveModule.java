@@ -2,6 +2,7 @@ package frc.robot;
 
 import com.ctre.phoenix.motorcontrol.ControlMode;
 import com.ctre.phoenix.motorcontrol.DemandType;
+import com.ctre.phoenix.motorcontrol.StatusFrame;
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonFX;
 import com.ctre.phoenix.sensors.WPI_CANCoder;
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
@@ -9,21 +10,26 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import frc.lib.math.Conversions;
-import frc.lib.util.CTREModuleState;
 import frc.lib.util.SwerveModuleConstants;
 
 public class SwerveModule {
   public int moduleNumber;
   private Rotation2d angleOffset;
-  private Rotation2d lastAngle;
+  private double lastAngleDegrees;
 
   private WPI_TalonFX mAngleMotor;
   private WPI_TalonFX mDriveMotor;
   private WPI_CANCoder angleEncoder;
 
-  SimpleMotorFeedforward feedforward =
-      new SimpleMotorFeedforward(
-          Constants.Swerve.driveKS, Constants.Swerve.driveKV, Constants.Swerve.driveKA);
+  private final SwerveModuleDemands demands =
+      new SwerveModuleDemands(
+          new SimpleMotorFeedforward(
+              Constants.Swerve.driveKS, Constants.Swerve.driveKV, Constants.Swerve.driveKA),
+          Constants.Swerve.maxSpeed,
+          Constants.Swerve.wheelCircumference,
+          Constants.Swerve.driveGearRatio,
+          Constants.Swerve.angleGearRatio,
+          Constants.Swerve.angleKV);
 
   public SwerveModule(int moduleNumber, SwerveModuleConstants moduleConstants) {
     this.moduleNumber = moduleNumber;
@@ -41,59 +47,160 @@ public class SwerveModule {
     mDriveMotor = new WPI_TalonFX(moduleConstants.driveMotorID);
     configDriveMotor();
 
-    lastAngle = getState().angle;
+    updateInputs();
+    lastAngleDegrees = getAngleDegrees();
   }
 
   public void setDesiredState(SwerveModuleState desiredState, boolean isOpenLoop) {
+    setDesiredState(desiredState.speedMetersPerSecond, desiredState.angle.getDegrees(), isOpenLoop);
+  }
+
+  /** Same as the SwerveModuleState version, but doesn't allocate anything */
+  public void setDesiredState(
+      double speedMetersPerSecond, double angleDegrees, boolean isOpenLoop) {
+    setDesiredState(speedMetersPerSecond, angleDegrees, 0, 0, isOpenLoop);
+  }
+
+  /**
+   * Also feeds forward how the setpoint is changing, so the module doesn't have to fall behind
+   * before the PID reacts.
+   *
+   * @param accelerationMetersPerSecondSquared Along angleDegrees, only used closed loop
+   * @param angleVelocityDegreesPerSecond How fast angleDegrees is turning
+   */
+  public void setDesiredState(
+      double speedMetersPerSecond,
+      double angleDegrees,
+      double accelerationMetersPerSecondSquared,
+      double angleVelocityDegreesPerSecond,
+      boolean isOpenLoop) {
     // isOpenLoop is true during teleop and false in auto (uses feedfoward and pid control during
     // auto).
-    // Calculates the shortest path to the desired angle, e.x. 340 -> 20 is +40 instead of -320.
-    desiredState = CTREModuleState.optimize(desiredState, getState().angle);
-    setAngle(desiredState);
-    setSpeed(desiredState, isOpenLoop);
+    demands.calculate(
+        speedMetersPerSecond,
+        angleDegrees,
+        accelerationMetersPerSecondSquared,
+        angleVelocityDegreesPerSecond,
+        getAngleDegrees(),
+        isOpenLoop);
+    setAngle();
+    setSpeed(isOpenLoop);
   }
 
-  private void setSpeed(SwerveModuleState desiredState, boolean isOpenLoop) {
+  private void setSpeed(boolean isOpenLoop) {
     if (isOpenLoop) {
-      double percentOutput = desiredState.speedMetersPerSecond / Constants.Swerve.maxSpeed;
-      mDriveMotor.set(ControlMode.PercentOutput, percentOutput);
+      mDriveMotor.set(ControlMode.PercentOutput, demands.getDrivePercentOutput());
     } else {
-      double velocity =
-          Conversions.MPSToFalcon(
-              desiredState.speedMetersPerSecond,
-              Constants.Swerve.wheelCircumference,
-              Constants.Swerve.driveGearRatio);
       mDriveMotor.set(
           ControlMode.Velocity,
-          velocity,
+          demands.getDriveVelocity(),
           DemandType.ArbitraryFeedForward,
-          feedforward.calculate(desiredState.speedMetersPerSecond));
+          demands.getDriveFeedforward());
     }
   }
 
-  private void setAngle(SwerveModuleState desiredState) {
+  private void setAngle() {
     // 1% control deadband to prevent jittering. Note that this is module angle/direction, not
     // robot.
     // If we aren't moving that much, it doesn't matter that it's not in the correct direction.
-    Rotation2d angle =
-        /*(Math.abs(desiredState.speedMetersPerSecond) <= (Constants.Swerve.maxSpeed * 0.01))
-        ? lastAngle // I decided to comment this out because it might be causing some weird issues
-        : */ desiredState.angle;
+    double angle =
+        /*(Math.abs(speedMetersPerSecond) <= (Constants.Swerve.maxSpeed * 0.01))
+        ? lastAngleDegrees // I decided to comment this out because it might be causing some weird issues
+        : */ demands.getAngleDegrees();
 
     mAngleMotor.set(
         ControlMode.Position,
-        Conversions.degreesToFalcon(angle.getDegrees(), Constants.Swerve.angleGearRatio));
-    lastAngle = angle;
+        demands.getAnglePosition(),
+        DemandType.ArbitraryFeedForward,
+        demands.getAngleFeedforward());
+    lastAngleDegrees = angle;
+  }
+
+  /** Sensor values, read once per loop by {@link #updateInputs()} */
+  public static class Inputs {
+    public double drivePositionMeters;
+    public double driveVelocityMPS;
+    /** Continuous (not wrapped) module angle */
+    public double angleDegrees;
+    public double angleVelocityDegreesPerSecond;
+    public double canCoderDegrees;
+    public double driveCurrent;
+  }
+
+  private final Inputs inputs = new Inputs();
+
+  /** Reads every sensor on the module. Called by Swerve at the start of every loop. */
+  public void updateInputs() {
+    inputs.drivePositionMeters = readDriveDistanceMeters();
+    inputs.driveVelocityMPS = readDriveVelocityMPS();
+    inputs.angleDegrees = readAngleDegrees();
+    inputs.angleVelocityDegreesPerSecond = readAngleVelocityDegreesPerSecond();
+    inputs.canCoderDegrees = angleEncoder.getAbsolutePosition();
+    inputs.driveCurrent = mDriveMotor.getSupplyCurrent();
+  }
+
+  public Inputs getInputs() {
+    return inputs;
   }
 
   private Rotation2d getAngle() {
-    return Rotation2d.fromDegrees(
-        Conversions.falconToDegrees(
-            mAngleMotor.getSelectedSensorPosition(), Constants.Swerve.angleGearRatio));
+    return Rotation2d.fromDegrees(getAngleDegrees());
+  }
+
+  /** Continuous (not wrapped) module angle, as of the start of this loop */
+  public double getAngleDegrees() {
+    return inputs.angleDegrees;
+  }
+
+  public double getAngleVelocityDegreesPerSecond() {
+    return inputs.angleVelocityDegreesPerSecond;
+  }
+
+  public double getDriveDistanceMeters() {
+    return inputs.drivePositionMeters;
+  }
+
+  public double getDriveVelocityMPS() {
+    return inputs.driveVelocityMPS;
+  }
+
+  /*
+   * The read methods go straight to the hardware instead of the inputs, so they are what the
+   * odometry thread uses.
+   */
+
+  /** Continuous (not wrapped) module angle, safe to call from the odometry thread */
+  public double readAngleDegrees() {
+    return Conversions.falconToDegrees(
+        mAngleMotor.getSelectedSensorPosition(), Constants.Swerve.angleGearRatio);
+  }
+
+  /** Safe to call from the odometry thread */
+  public double readAngleVelocityDegreesPerSecond() {
+    // Falcon velocity is in counts per 100ms
+    return Conversions.falconToDegrees(
+            mAngleMotor.getSelectedSensorVelocity(), Constants.Swerve.angleGearRatio)
+        * 10;
+  }
+
+  /** Safe to call from the odometry thread */
+  public double readDriveDistanceMeters() {
+    return Conversions.falconToMeters(
+        mDriveMotor.getSelectedSensorPosition(),
+        Constants.Swerve.wheelCircumference,
+        Constants.Swerve.driveGearRatio);
+  }
+
+  /** Safe to call from the odometry thread */
+  public double readDriveVelocityMPS() {
+    return Conversions.falconToMPS(
+        mDriveMotor.getSelectedSensorVelocity(),
+        Constants.Swerve.wheelCircumference,
+        Constants.Swerve.driveGearRatio);
   }
 
   public Rotation2d getCanCoder() {
-    return Rotation2d.fromDegrees(angleEncoder.getAbsolutePosition());
+    return Rotation2d.fromDegrees(inputs.canCoderDegrees);
   }
 
   // Measures the absolute encoder value and offset, and configures the angle motor to know the
@@ -101,8 +208,10 @@ public class SwerveModule {
   public void resetToAbsolute() {
     double absolutePosition =
         Conversions.degreesToFalcon(
-            getCanCoder().getDegrees() - angleOffset.getDegrees(), Constants.Swerve.angleGearRatio);
+            angleEncoder.getAbsolutePosition() - angleOffset.getDegrees(),
+            Constants.Swerve.angleGearRatio);
     mAngleMotor.setSelectedSensorPosition(absolutePosition);
+    inputs.angleDegrees = readAngleDegrees();
   }
 
   private void configAngleEncoder() {
@@ -115,36 +224,42 @@ public class SwerveModule {
     mAngleMotor.configAllSettings(Robot.ctreConfigs.swerveAngleFXConfig);
     mAngleMotor.setInverted(Constants.Swerve.angleMotorInvert);
     mAngleMotor.setNeutralMode(Constants.Swerve.angleNeutralMode);
+    configStatusFrames(mAngleMotor, Constants.Swerve.azimuthFramePeriodMs);
     resetToAbsolute();
   }
 
+  // Position and velocity are sampled by the odometry thread. The drive motor sends them as often
+  // as it runs, the azimuth once per main loop.
+  private static void configStatusFrames(WPI_TalonFX motor, int feedbackFramePeriodMs) {
+    motor.setStatusFramePeriod(StatusFrame.Status_2_Feedback0, feedbackFramePeriodMs);
+    motor.setStatusFramePeriod(
+        StatusFrame.Status_10_Targets, Constants.Swerve.unusedFramePeriodMs);
+    motor.setStatusFramePeriod(
+        StatusFrame.Status_12_Feedback1, Constants.Swerve.unusedFramePeriodMs);
+    motor.setStatusFramePeriod(
+        StatusFrame.Status_13_Base_PIDF0, Constants.Swerve.unusedFramePeriodMs);
+    motor.setStatusFramePeriod(
+        StatusFrame.Status_14_Turn_PIDF1, Constants.Swerve.unusedFramePeriodMs);
+  }
+
   private void configDriveMotor() {
     mDriveMotor.configFactoryDefault();
     mDriveMotor.configAllSettings(Robot.ctreConfigs.swerveDriveFXConfig);
     mDriveMotor.setInverted(Constants.Swerve.driveMotorInvert);
     mDriveMotor.setNeutralMode(Constants.Swerve.driveNeutralMode);
+    configStatusFrames(mDriveMotor, Constants.Swerve.odometryFramePeriodMs);
     mDriveMotor.setSelectedSensorPosition(0);
   }
 
   public SwerveModuleState getState() {
-    return new SwerveModuleState(
-        Conversions.falconToMPS(
-            mDriveMotor.getSelectedSensorVelocity(),
-            Constants.Swerve.wheelCircumference,
-            Constants.Swerve.driveGearRatio),
-        getAngle());
+    return new SwerveModuleState(getDriveVelocityMPS(), getAngle());
   }
 
   public SwerveModulePosition getPosition() {
-    return new SwerveModulePosition(
-        Conversions.falconToMeters(
-            mDriveMotor.getSelectedSensorPosition(),
-            Constants.Swerve.wheelCircumference,
-            Constants.Swerve.driveGearRatio),
-        getAngle());
+    return new SwerveModulePosition(getDriveDistanceMeters(), getAngle());
   }
 
   public double getDriveCurrent() {
-    return mDriveMotor.getSupplyCurrent();
+    return inputs.driveCurrent;
   }
 }
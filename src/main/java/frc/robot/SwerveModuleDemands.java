@@ -0,0 +1,113 @@
+package frc.robot;
+
+import edu.wpi.first.math.controller.SimpleMotorFeedforward;
+import frc.lib.math.Conversions;
+import frc.lib.util.CTREModuleState;
+
+/**
+ * What a SwerveModule sends its motors for a desired state, worked out without the motors so that
+ * DriveAllocationTest can run it. SwerveModule calls {@link #calculate} and passes the results on.
+ *
+ * <p>Nothing allocates after construction.
+ */
+public class SwerveModuleDemands {
+  private final SimpleMotorFeedforward feedforward;
+  private final double maxSpeed;
+  private final double wheelCircumference;
+  private final double driveGearRatio;
+  private final double angleGearRatio;
+  private final double angleKV;
+
+  // Output of CTREModuleState.optimize, reused every loop
+  private final double[] optimizedState = new double[2];
+
+  private double drivePercentOutput;
+  private double driveVelocity;
+  private double driveFeedforward;
+  private double angleDegrees;
+  private double anglePosition;
+  private double angleFeedforward;
+
+  /**
+   * @param maxSpeed Meters per second at full open loop output
+   * @param angleKV Azimuth feedforward per radian per second
+   */
+  public SwerveModuleDemands(
+      SimpleMotorFeedforward driveFeedforward,
+      double maxSpeed,
+      double wheelCircumference,
+      double driveGearRatio,
+      double angleGearRatio,
+      double angleKV) {
+    this.feedforward = driveFeedforward;
+    this.maxSpeed = maxSpeed;
+    this.wheelCircumference = wheelCircumference;
+    this.driveGearRatio = driveGearRatio;
+    this.angleGearRatio = angleGearRatio;
+    this.angleKV = angleKV;
+  }
+
+  /**
+   * Same arguments as SwerveModule.setDesiredState.
+   *
+   * @param currentAngleDegrees Continuous (not wrapped) module angle
+   */
+  public void calculate(
+      double speedMetersPerSecond,
+      double angleDegrees,
+      double accelerationMetersPerSecondSquared,
+      double angleVelocityDegreesPerSecond,
+      double currentAngleDegrees,
+      boolean isOpenLoop) {
+    // Calculates the shortest path to the desired angle, e.x. 340 -> 20 is +40 instead of -320.
+    // If that means driving backwards, flip the acceleration too. Turning rate is the same either
+    // way.
+    if (CTREModuleState.optimize(
+        speedMetersPerSecond, angleDegrees, currentAngleDegrees, optimizedState)) {
+      accelerationMetersPerSecondSquared = -accelerationMetersPerSecondSquared;
+    }
+    double speed = optimizedState[0];
+    this.angleDegrees = optimizedState[1];
+
+    if (isOpenLoop) {
+      drivePercentOutput = speed / maxSpeed;
+      driveVelocity = 0;
+      driveFeedforward = 0;
+    } else {
+      drivePercentOutput = 0;
+      driveVelocity = Conversions.MPSToFalcon(speed, wheelCircumference, driveGearRatio);
+      driveFeedforward = feedforward.calculate(speed, accelerationMetersPerSecondSquared);
+    }
+    anglePosition = Conversions.degreesToFalcon(this.angleDegrees, angleGearRatio);
+    angleFeedforward = angleKV * Math.toRadians(angleVelocityDegreesPerSecond);
+  }
+
+  /** Open loop only */
+  public double getDrivePercentOutput() {
+    return drivePercentOutput;
+  }
+
+  /** Closed loop only, in Falcon counts per 100ms */
+  public double getDriveVelocity() {
+    return driveVelocity;
+  }
+
+  /** Closed loop only, as a fraction of full output like the gains */
+  public double getDriveFeedforward() {
+    return driveFeedforward;
+  }
+
+  /** Continuous module angle the azimuth is sent to */
+  public double getAngleDegrees() {
+    return angleDegrees;
+  }
+
+  /** {@link #getAngleDegrees()} in Falcon counts */
+  public double getAnglePosition() {
+    return anglePosition;
+  }
+
+  public double getAngleFeedforward() {
+    return angleFeedforward;
+  }
+}
@@ -1,26 +1,54 @@
 package frc.robot;
 
-import edu.wpi.first.math.geometry.Pose2d;
-import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.networktables.NetworkTable;
-import edu.wpi.first.networktables.NetworkTableEntry;
-import edu.wpi.first.networktables.NetworkTableInstance;
-import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj.Timer;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import edu.wpi.first.wpilibj2.command.Commands;
-import java.util.Optional;
+import frc.lib.util.CameraConstants;
+import frc.robot.util.Telemetry;
+import frc.robot.util.TelemetryArray;
 
 /**
- * The Vision class interfaces with the Limelight and gets robot positions using AprilTags. This is
+ * The Vision class interfaces with the Limelights and gets robot positions using AprilTags. This is
  * used by the Swerve subsystem.
+ *
+ * <p>There is one {@link VisionCamera} per entry in Constants.Limelight.cameras. Each one processes
+ * its frames on its own thread, so however much work a frame takes it never lands in the main loop
+ * and the cameras don't wait on each other. Accepted estimates are handed over through one
+ * lock-free queue per camera, and {@link #pollEstimate(PoseEstimate)} merges those into a single
+ * stream, oldest first.
  */
 public class Vision {
-  NetworkTable table;
+  private final VisionCamera[] cameras;
+
+  // Written by Swerve every loop, read by the camera threads
+  private volatile double tiltMagnitude = 0;
+  private volatile double angularVelocity = 0;
+
+  // Only touched by the main thread
+  private long accepted = 0;
+  private long rejectedByOdometry = 0;
+  private double lastXyStdDev = 0;
+  private final TelemetryArray telemetry =
+      new TelemetryArray(
+          "Vision",
+          Telemetry.Level.NORMAL,
+          10,
+          "accepted",
+          "rejected: outside field",
+          "rejected: tilted",
+          "rejected: disagrees with odometry",
+          "dropped: queue full",
+          "last xy std dev (m)");
 
   public Vision() {
-    table = NetworkTableInstance.getDefault().getTable("limelight");
+    this(Constants.Limelight.cameras);
+  }
+
+  public Vision(CameraConstants... cameraConstants) {
+    cameras = new VisionCamera[cameraConstants.length];
+    for (int i = 0; i < cameras.length; i++) {
+      cameras[i] = new VisionCamera(cameraConstants[i], this);
+    }
     for (int i = 1; i < 32; i += 4) {
       setLLDriverCmd()
           .beforeStarting(Commands.waitSeconds(i).andThen(Commands.print("Setting LL driver mode")))
@@ -28,52 +56,182 @@ public class Vision {
     }
   }
 
-  public void setLLDriver() {
-    getEntry("ledMode").setNumber(1);
-    getEntry("camMode").setNumber(1);
+  /** Starts processing frames in the background */
+  public void start() {
+    for (VisionCamera camera : cameras) {
+      camera.start();
+    }
   }
 
-  public NetworkTableEntry getEntry(String entryName) {
-    return table.getEntry(entryName);
+  public void stop() {
+    for (VisionCamera camera : cameras) {
+      camera.stop();
+    }
+  }
+
+  public void setLLDriver() {
+    for (VisionCamera camera : cameras) {
+      camera.table.getEntry("ledMode").setNumber(1);
+      camera.table.getEntry("camMode").setNumber(1);
+    }
   }
 
   public CommandBase setLLDriverCmd() {
     return Commands.runOnce(this::setLLDriver).ignoringDisable(true);
   }
 
-  /** A non-vendor-library-dependent way to hold the estimated robot position */
-  public class PoseEstimate {
-    public final Pose2d estimatedPose;
-    public final double timestampSeconds;
+  public int getCameraCount() {
+    return cameras.length;
+  }
 
-    public PoseEstimate(Pose2d estimatedPose, double timestampSeconds) {
-      this.estimatedPose = estimatedPose;
+  /**
+   * A non-vendor-library-dependent way to hold the estimated robot position. Mutable so the same
+   * objects can be filled in frame after frame without creating garbage.
+   */
+  public static class PoseEstimate {
+    // Field relative, meters and radians
+    public double x;
+    public double y;
+    public double theta;
+    public double timestampSeconds;
+    // How much to trust the estimate, in meters and radians
+    public double stdDevX;
+    public double stdDevY;
+    public double stdDevTheta;
+    public int tagCount;
+
+    public void set(
+        double x,
+        double y,
+        double theta,
+        double timestampSeconds,
+        double stdDevX,
+        double stdDevY,
+        double stdDevTheta,
+        int tagCount) {
+      this.x = x;
+      this.y = y;
+      this.theta = theta;
       this.timestampSeconds = timestampSeconds;
+      this.stdDevX = stdDevX;
+      this.stdDevY = stdDevY;
+      this.stdDevTheta = stdDevTheta;
+      this.tagCount = tagCount;
     }
+
+    public void copyFrom(PoseEstimate other) {
+      set(
+          other.x,
+          other.y,
+          other.theta,
+          other.timestampSeconds,
+          other.stdDevX,
+          other.stdDevY,
+          other.stdDevTheta,
+          other.tagCount);
+    }
+  }
+
+  /**
+   * Tells the camera threads what the robot is doing, for scoring frames. Call every loop.
+   *
+   * @param tiltMagnitude See Swerve.getTiltMagnitude()
+   * @param angularVelocity Radians per second
+   */
+  public void setRobotState(double tiltMagnitude, double angularVelocity) {
+    this.tiltMagnitude = tiltMagnitude;
+    this.angularVelocity = angularVelocity;
   }
 
-  public Optional<PoseEstimate> getEstimatedPose() {
-    /*Optional<EstimatedRobotPose> estimatedPosition = photonPoseEstimator.update();
-    PoseEstimate position = null;
-
-    if (estimatedPosition.isPresent()) {
-      EstimatedRobotPose camPose = estimatedPosition.get();
-      position = new PoseEstimate(camPose.estimatedPose.toPose2d(), camPose.timestampSeconds);
-      timeSinceLastVision.reset();
-    }*/
-    PoseEstimate position = null;
-    if (getEntry("tv").getInteger(1) == 1) {
-      double[] posArray =
-          getEntry("botpose_wpi" + DriverStation.getAlliance().name().toLowerCase())
-              .getDoubleArray(new double[7]);
-      position =
-          new PoseEstimate(
-              new Pose2d(posArray[0], posArray[1], new Rotation2d(5)),
-              Timer.getFPGATimestamp() - (posArray[6] / 1000.0));
-
-      SmartDashboard.putString("Last Pose Estimate", position.estimatedPose.toString());
+  double getTiltMagnitude() {
+    return tiltMagnitude;
+  }
+
+  double getAngularVelocity() {
+    return angularVelocity;
+  }
+
+  /** Main thread, call for every estimate that went into the pose estimator */
+  public void recordAccepted(PoseEstimate estimate) {
+    accepted++;
+    lastXyStdDev = estimate.stdDevX;
+  }
+
+  /** Main thread, call for every estimate the pose estimator's gate threw out */
+  public void recordRejectedByOdometry() {
+    rejectedByOdometry++;
+  }
+
+  /** Main thread */
+  public void publishTelemetry() {
+    if (!telemetry.isDue()) {
+      return;
+    }
+    long rejectedOutsideField = 0;
+    long rejectedTilted = 0;
+    long dropped = 0;
+    for (VisionCamera camera : cameras) {
+      rejectedOutsideField += camera.rejectedOutsideField;
+      rejectedTilted += camera.rejectedTilted;
+      dropped += camera.droppedEstimates;
+    }
+    telemetry.set(0, accepted);
+    telemetry.set(1, rejectedOutsideField);
+    telemetry.set(2, rejectedTilted);
+    telemetry.set(3, rejectedByOdometry);
+    telemetry.set(4, dropped);
+    telemetry.set(5, lastXyStdDev);
+    telemetry.publish();
+  }
+
+  /**
+   * Copies the next estimate from any camera into out. Estimates come out oldest first across all
+   * cameras and every Limelight frame is returned at most once. Only call from one thread.
+   *
+   * <p>Only what has already been queued is merged, so a camera whose frames show up late can still
+   * hand back something older than the last estimate. The pose estimator handles that.
+   *
+   * @return False if there are none left
+   */
+  public boolean pollEstimate(PoseEstimate out) {
+    VisionCamera oldest = null;
+    double oldestTimestamp = Double.POSITIVE_INFINITY;
+    for (VisionCamera camera : cameras) {
+      PoseEstimate next = camera.estimates.peek();
+      if (next != null && next.timestampSeconds < oldestTimestamp) {
+        oldest = camera;
+        oldestTimestamp = next.timestampSeconds;
+      }
+    }
+    if (oldest == null) {
+      return false;
     }
+    out.copyFrom(oldest.estimates.peek());
+    oldest.estimates.release();
+    return true;
+  }
 
-    return Optional.ofNullable(position);
+  /**
+   * Copies the newest frame that had tags in it from the given camera, with every fiducial, into
+   * out. Safe to call from any thread.
+   *
+   * @param camera Index into Constants.Limelight.cameras
+   */
+  public void copyLatestResults(int camera, LimelightResults out) {
+    cameras[camera].copyLatestResults(out);
+  }
+
+  /** Where the given camera is on the robot */
+  public Transform3d getRobotToCam(int camera) {
+    return cameras[camera].robotToCam;
+  }
+
+  /** Estimates thrown away because Swerve didn't keep up, over all cameras */
+  public long getDroppedEstimates() {
+    long dropped = 0;
+    for (VisionCamera camera : cameras) {
+      dropped += camera.droppedEstimates;
+    }
+    return dropped;
   }
 }
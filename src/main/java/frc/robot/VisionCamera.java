@@ -0,0 +1,219 @@
+package frc.robot;
+
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.StringSubscriber;
+import edu.wpi.first.networktables.TimestampedString;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.Notifier;
+import frc.lib.util.CameraConstants;
+import frc.lib.util.SpscQueue;
+import frc.robot.Vision.PoseEstimate;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * One Limelight. Each camera processes its own frames on its own thread and hands accepted
+ * estimates to {@link Vision} through its own lock-free queue, so a slow camera never holds up the
+ * others.
+ */
+class VisionCamera {
+  final NetworkTable table;
+  final Transform3d robotToCam;
+  private final Vision vision;
+
+  // Everything below is only touched by this camera's thread, except for the queue
+
+  // Frames kept between two runs
+  private static final int maxFramesPerRun = 20;
+
+  // Queued subscriber, so every frame that arrives between two runs is kept
+  private final StringSubscriber json;
+  // Reused for every frame
+  private final LimelightResults results = new LimelightResults();
+  // Copy of the newest frame with tags in it, for other threads. Guarded by itself.
+  private final LimelightResults latestResults = new LimelightResults();
+  // Estimates from this run, filled in place
+  private final PoseEstimate[] newEstimates = new PoseEstimate[maxFramesPerRun];
+  private int newEstimateCount = 0;
+  private final Comparator<PoseEstimate> byTimestamp =
+      Comparator.comparingDouble(estimate -> estimate.timestampSeconds);
+  // Limelight capture timestamps of the last few frames, to recognize the same frame sent twice.
+  // Only exact repeats are dropped: the pose estimator takes measurements out of order, so a frame
+  // that is older than one already used is still worth having.
+  private final double[] recentCaptures = new double[2 * maxFramesPerRun];
+  private int recentCaptureCount = 0;
+  private int nextRecentCapture = 0;
+  volatile long rejectedOutsideField = 0;
+  volatile long rejectedTilted = 0;
+  volatile long droppedEstimates = 0;
+
+  // Camera thread -> Vision. A few loops' worth of frames at the Limelight's top frame rate. The
+  // estimates in it are reused.
+  final SpscQueue<PoseEstimate> estimates = new SpscQueue<>(32, PoseEstimate::new);
+  private final Notifier notifier = new Notifier(this::process);
+
+  // {x, y, degrees} of the newest estimate, for the dashboard
+  private final DoubleArrayPublisher lastPosePublisher;
+  private final double[] lastPose = new double[3];
+
+  VisionCamera(CameraConstants constants, Vision vision) {
+    this.vision = vision;
+    robotToCam = constants.robotToCam;
+    table = NetworkTableInstance.getDefault().getTable(constants.tableName);
+    json =
+        table
+            .getStringTopic("json")
+            .subscribe(
+                "",
+                PubSubOption.keepDuplicates(true),
+                PubSubOption.sendAll(true),
+                PubSubOption.pollStorage(maxFramesPerRun));
+    for (int i = 0; i < newEstimates.length; i++) {
+      newEstimates[i] = new PoseEstimate();
+    }
+    lastPosePublisher =
+        NetworkTableInstance.getDefault()
+            .getTable("SmartDashboard")
+            .getDoubleArrayTopic("Last Pose Estimate/" + constants.tableName)
+            .publish();
+    notifier.setName("Vision " + constants.tableName);
+  }
+
+  void start() {
+    notifier.startPeriodic(Constants.Limelight.processingPeriod);
+  }
+
+  void stop() {
+    notifier.stop();
+  }
+
+  void copyLatestResults(LimelightResults out) {
+    synchronized (latestResults) {
+      out.copyFrom(latestResults);
+    }
+  }
+
+  /**
+   * Runs on the camera's thread. Collects every frame the Limelight produced since the last run,
+   * puts them in capture order and hands them to the queue.
+   */
+  private void process() {
+    newEstimateCount = 0;
+    TimestampedString[] frames = json.readQueue();
+    Alliance alliance = DriverStation.getAlliance();
+    if (alliance == Alliance.Invalid) {
+      return;
+    }
+    for (TimestampedString frame : frames) {
+      if (!results.parse(frame.value)
+          || !results.valid
+          || results.fiducialCount == 0
+          || isRepeat(results.timestamp)) {
+        continue;
+      }
+      synchronized (latestResults) {
+        latestResults.copyFrom(results);
+      }
+      addFrame(
+          frame.timestamp,
+          alliance == Alliance.Blue ? results.botposeWpiBlue : results.botposeWpiRed);
+    }
+    // Latency differs between frames, so arrival order isn't always capture order
+    Arrays.sort(newEstimates, 0, newEstimateCount, byTimestamp);
+
+    for (int i = 0; i < newEstimateCount; i++) {
+      PoseEstimate estimate = newEstimates[i];
+      PoseEstimate slot = estimates.claim();
+      if (slot == null) {
+        droppedEstimates++;
+        continue;
+      }
+      slot.copyFrom(estimate);
+      estimates.publish();
+    }
+
+    if (newEstimateCount > 0) {
+      PoseEstimate newest = newEstimates[newEstimateCount - 1];
+      lastPose[0] = newest.x;
+      lastPose[1] = newest.y;
+      lastPose[2] = Math.toDegrees(newest.theta);
+      lastPosePublisher.set(lastPose);
+    }
+  }
+
+  /** Whether a frame with this capture timestamp was already seen, remembering it if not */
+  private boolean isRepeat(double captureTimestamp) {
+    for (int i = 0; i < recentCaptureCount; i++) {
+      if (recentCaptures[i] == captureTimestamp) {
+        return true;
+      }
+    }
+    recentCaptures[nextRecentCapture] = captureTimestamp;
+    nextRecentCapture = (nextRecentCapture + 1) % recentCaptures.length;
+    recentCaptureCount = Math.min(recentCaptureCount + 1, recentCaptures.length);
+    return false;
+  }
+
+  /** Scores the frame in {@link #results} into the next of newEstimates, unless it's rejected */
+  private void addFrame(long receivedMicros, double[] botpose) {
+    // The chassis can be anywhere while it's rocking on the charge station, and the camera isn't
+    // where we think it is
+    if (vision.getTiltMagnitude() > Constants.Limelight.maxTiltMagnitude) {
+      rejectedTilted++;
+      return;
+    }
+    double x = botpose[0];
+    double y = botpose[1];
+    double margin = Constants.Limelight.fieldMargin;
+    if (x < -margin
+        || x > Constants.Field.length + margin
+        || y < -margin
+        || y > Constants.Field.width + margin) {
+      rejectedOutsideField++;
+      return;
+    }
+
+    int tagCount = results.fiducialCount;
+    double distance = results.getAverageTagDistance();
+    // Pipelines without full 3D don't give target poses
+    if (distance == 0) {
+      distance = Constants.Limelight.assumedTagDistance;
+    }
+    double scale =
+        distance
+            * distance
+            / tagCount
+            * (1
+                + Constants.Limelight.angularVelocityPenalty
+                    * Math.abs(vision.getAngularVelocity()));
+    double xyStdDev = Constants.Limelight.xyStdDevCoefficient * scale;
+    double thetaStdDev = Constants.Limelight.thetaStdDevCoefficient * scale;
+    if (tagCount == 1) {
+      xyStdDev *= Constants.Limelight.singleTagPenalty;
+      thetaStdDev = Double.POSITIVE_INFINITY;
+    }
+
+    // NT timestamps are on the FPGA clock (microseconds). The Limelight's own timestamp is on its
+    // clock, so it's only good for telling frames apart.
+    double timestamp = receivedMicros / 1e6 - results.getLatencySeconds();
+    // The queue holds no more than this, but don't trust it
+    if (newEstimateCount == newEstimates.length) {
+      droppedEstimates++;
+      return;
+    }
+    newEstimates[newEstimateCount++].set(
+        x,
+        y,
+        Math.toRadians(botpose[5]),
+        timestamp,
+        xyStdDev,
+        xyStdDev,
+        thetaStdDev,
+        tagCount);
+  }
+}
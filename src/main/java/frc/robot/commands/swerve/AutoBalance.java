@@ -2,7 +2,6 @@ package frc.robot.commands.swerve;
 
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.wpilibj2.command.PIDCommand;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
@@ -38,14 +37,10 @@ public class AutoBalance extends SequentialCommandGroup {
                   output = Math.abs(output);
                   Rotation2d rot = s_Swerve.getTiltDirection();
                   if (output > 0.05) {
-                    s_Swerve.drive(
-                        new Translation2d(output * rot.getCos(), output * rot.getSin()),
-                        0,
-                        false,
-                        true);
+                    s_Swerve.drive(output * rot.getCos(), output * rot.getSin(), 0, false, true);
                   } else {
                     // This technically sets the motors to brake mode?
-                    s_Swerve.drive(new Translation2d(0, 0), 0, false, true);
+                    s_Swerve.drive(0, 0, 0, false, true);
                   }
                 },
                 s_Swerve)
@@ -1,7 +1,6 @@
 package frc.robot.commands.swerve;
 
 import edu.wpi.first.math.MathUtil;
-import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.Constants;
 import frc.robot.subsystems.Swerve;
@@ -86,7 +85,8 @@ public class TeleopSwerve extends CommandBase {
     /* Drive */
     s_Swerve.drive(
         // Intentionally flipped (I think?)
-        new Translation2d(forwardBackwardVal, leftRightVal).times(Constants.Swerve.maxSpeed),
+        forwardBackwardVal * Constants.Swerve.maxSpeed,
+        leftRightVal * Constants.Swerve.maxSpeed,
         rotationVal * Constants.Swerve.maxAngularVelocity,
         !robotCentricSup.getAsBoolean(),
         true);
@@ -10,6 +10,9 @@ import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.FunctionalCommand;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.Telemetry;
+import frc.robot.util.TelemetryArray;
 import java.util.function.DoubleSupplier;
 
 public class Elbow extends SubsystemBase {
@@ -61,6 +64,8 @@ public class Elbow extends SubsystemBase {
 
     SmartDashboard.putData("Arm", this);
 
+    updateInputs();
+
     // Note that because of command groups this doesn't happen in auto
     setDefaultCommand(retainPositionCmd());
   }
@@ -81,8 +86,25 @@ public class Elbow extends SubsystemBase {
     */
   }
 
+  /** Sensor values, read once per loop at the start of periodic() */
+  public static class Inputs {
+    public double position;
+    public double velocity;
+  }
+
+  private final Inputs inputs = new Inputs();
+
+  private void updateInputs() {
+    inputs.position = elbowPivot.getSelectedSensorPosition();
+    inputs.velocity = elbowPivot.getSelectedSensorVelocity();
+  }
+
+  public Inputs getInputs() {
+    return inputs;
+  }
+
   public double getPosition() {
-    return elbowPivot.getSelectedSensorPosition();
+    return inputs.position;
   }
 
   public void move(double speed) {
@@ -165,7 +187,7 @@ public class Elbow extends SubsystemBase {
 
   public boolean isFinished() {
     return (Math.abs(getPosition() - mmPosition) < Constants.Elbow.rotationEps)
-        && (Math.abs(elbowPivot.getSelectedSensorVelocity()) < Constants.Elbow.velocityEps);
+        && (Math.abs(inputs.velocity) < Constants.Elbow.velocityEps);
   }
 
   public Command goToDeg(double deg) {
@@ -179,6 +201,7 @@ public class Elbow extends SubsystemBase {
   public void resetToZero() {
     System.out.println("zero arm");
     elbowPivot.setSelectedSensorPosition(0);
+    inputs.position = 0;
   }
 
   public double getPositionDegrees() {
@@ -193,10 +216,21 @@ public class Elbow extends SubsystemBase {
     return goToDeg(Constants.Elbow.Positions.second);
   }
 
+  // Telemetry schema for /Telemetry/Elbow
+  private final TelemetryArray telemetry =
+      new TelemetryArray(
+          "Elbow", Telemetry.Level.NORMAL, 50, "elbow pos", "elbow pos deg est");
+
+  private final LoopProfiler.Section profile = LoopProfiler.section("Elbow");
+
   @Override
   public void periodic() {
+    profile.start();
+    updateInputs();
     double p = getPosition();
-    SmartDashboard.putNumber("elbow pos", p);
-    SmartDashboard.putNumber("elbow pos deg est", p * Constants.Elbow.degreesPerTick);
+    telemetry.set(0, p);
+    telemetry.set(1, p * Constants.Elbow.degreesPerTick);
+    telemetry.publish();
+    profile.stop();
   }
 }
@@ -9,6 +9,9 @@ import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.Telemetry;
+import frc.robot.util.TelemetryArray;
 import java.util.function.DoubleSupplier;
 
 public class Elevator extends SubsystemBase {
@@ -32,6 +35,8 @@ public class Elevator extends SubsystemBase {
     setDefaultCommand(moveCmd(0));
 
     SmartDashboard.putData("Elevator", this);
+
+    updateInputs();
   }
 
   // SmartDashboard stuff
@@ -68,7 +73,7 @@ public class Elevator extends SubsystemBase {
 
   public boolean isFinished() {
     return (Math.abs(getPosition() - mmPosition) < Constants.Elevator.positionEps)
-        && (Math.abs(elevatorMotor.getSelectedSensorVelocity()) < Constants.Elevator.velocityEps);
+        && (Math.abs(inputs.velocity) < Constants.Elevator.velocityEps);
   }
 
   public Command goToBase() {
@@ -111,22 +116,50 @@ public class Elevator extends SubsystemBase {
 
   public void resetToZero() {
     elevatorMotor.setSelectedSensorPosition(0);
+    inputs.position = 0;
+  }
+
+  /** Sensor values, read once per loop at the start of periodic() */
+  public static class Inputs {
+    public double position;
+    public double velocity;
+  }
+
+  private final Inputs inputs = new Inputs();
+
+  private void updateInputs() {
+    inputs.position = elevatorMotor.getSelectedSensorPosition();
+    inputs.velocity = elevatorMotor.getSelectedSensorVelocity();
+  }
+
+  public Inputs getInputs() {
+    return inputs;
   }
 
   public double getPosition() {
-    return elevatorMotor.getSelectedSensorPosition();
+    return inputs.position;
   }
 
   public double getPositionPercent() {
-    return elevatorMotor.getSelectedSensorPosition() / Constants.Elevator.max;
+    return inputs.position / Constants.Elevator.max;
   }
 
   public double percentToPosition(double percentage) {
     return percentage * Constants.Elevator.max;
   }
 
+  // Telemetry schema for /Telemetry/Elevator
+  private final TelemetryArray telemetry =
+      new TelemetryArray("Elevator", Telemetry.Level.NORMAL, 50, "Elevator Position");
+
+  private final LoopProfiler.Section profile = LoopProfiler.section("Elevator");
+
   @Override
   public void periodic() {
-    SmartDashboard.putNumber("Elevator Position", getPosition());
+    profile.start();
+    updateInputs();
+    telemetry.set(0, getPosition());
+    telemetry.publish();
+    profile.stop();
   }
 }
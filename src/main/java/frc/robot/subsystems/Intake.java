@@ -6,11 +6,18 @@ import com.revrobotics.CANSparkMaxLowLevel.MotorType;
 import com.revrobotics.RelativeEncoder;
 import com.revrobotics.SparkMaxPIDController;
 import edu.wpi.first.math.filter.LinearFilter;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.networktables.BooleanPublisher;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
+import frc.lib.math.DerivativeEstimator;
+import frc.lib.math.LinearRegressionDerivative;
 import frc.robot.Constants;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.Telemetry;
+import frc.robot.util.TelemetryArray;
 import java.util.List;
 
 public class Intake extends SubsystemBase {
@@ -34,6 +41,8 @@ public class Intake extends SubsystemBase {
   // private final RelativeEncoder rightPos;
 
   private final LinearFilter currentMeasurer = LinearFilter.movingAverage(8);
+  private final DerivativeEstimator currentSlope =
+      new LinearRegressionDerivative(Constants.Intake.currentSlopeWindow);
 
   public Intake() {
     leftIntake = new CANSparkMax(Constants.Intake.leftIntakeID, MotorType.kBrushless);
@@ -69,6 +78,8 @@ public class Intake extends SubsystemBase {
         Constants.Intake.solenoidPortForward,
         Constants.Intake.solenoidPortReverse);*/
 
+    updateInputs();
+
     setDefaultCommand(retainPositionCmd());
   }
 
@@ -78,8 +89,30 @@ public class Intake extends SubsystemBase {
     // rightIntake.set(-intakeSpeed);
   }
 
+  /** Sensor values, read once per loop at the start of periodic() */
+  public static class Inputs {
+    public double leftPosition;
+    public double leftCurrent;
+  }
+
+  private final Inputs inputs = new Inputs();
+
+  private void updateInputs() {
+    inputs.leftPosition = leftPos.getPosition();
+    inputs.leftCurrent = leftIntake.getOutputCurrent();
+  }
+
+  public Inputs getInputs() {
+    return inputs;
+  }
+
+  /** How fast the intake current is changing, in amps per second */
+  public double getCurrentSlope() {
+    return currentSlope.getRate();
+  }
+
   public void stayAtPosition() {
-    leftPID.setReference(leftPos.getPosition(), CANSparkMax.ControlType.kPosition);
+    leftPID.setReference(inputs.leftPosition, CANSparkMax.ControlType.kPosition);
     // rightPID.setReference(rightPos.getPosition(), CANSparkMax.ControlType.kPosition);
   }
 
@@ -127,14 +160,41 @@ public class Intake extends SubsystemBase {
 
   public Trigger intakeHasThing = new Trigger(() -> currentFiltered > 20).debounce(0.05);
 
+  // Telemetry schemas for /Telemetry/Intake and /Telemetry/IntakeDebug
+  private final TelemetryArray telemetry =
+      new TelemetryArray(
+          "Intake", Telemetry.Level.NORMAL, 50, "Intake Status: ", "Left Intake Current");
+  private final TelemetryArray debugTelemetry =
+      new TelemetryArray(
+          "IntakeDebug",
+          Telemetry.Level.DEBUG,
+          50,
+          "Left Current Filtered",
+          "Left Current Slope");
+  // The drivers watch this one, so it stays where the dashboard expects it
+  private final BooleanPublisher hasThingPublisher =
+      NetworkTableInstance.getDefault()
+          .getTable("SmartDashboard")
+          .getBooleanTopic("Intake Has Thing")
+          .publish();
+
+  private final LoopProfiler.Section profile = LoopProfiler.section("Intake");
+
   @Override
   public void periodic() {
-    SmartDashboard.putNumber("Intake Status: ", lastPowerSet);
-    double leftCurrent = leftIntake.getOutputCurrent();
-    SmartDashboard.putNumber("Left Intake Current", leftCurrent);
+    profile.start();
+    updateInputs();
+    telemetry.set(0, lastPowerSet);
+    double leftCurrent = inputs.leftCurrent;
+    telemetry.set(1, leftCurrent);
+    telemetry.publish();
     currentFiltered = currentMeasurer.calculate(leftCurrent);
-    SmartDashboard.putNumber("Left Current Filtered", currentFiltered);
+    currentSlope.addSample(Timer.getFPGATimestamp(), leftCurrent);
+    debugTelemetry.set(0, currentFiltered);
+    debugTelemetry.set(1, currentSlope.getRate());
+    debugTelemetry.publish();
 
-    SmartDashboard.putBoolean("Intake Has Thing", intakeHasThing.getAsBoolean());
+    hasThingPublisher.set(intakeHasThing.getAsBoolean());
+    profile.stop();
   }
 }
@@ -46,6 +46,11 @@ public class LED extends SubsystemBase {
 
   /** Modify colors in buffer to prevent too much current being used */
   public void preprocessBuffer() {
+    preprocessBuffer(buffer);
+  }
+
+  /** Static so that it can be benchmarked without LED hardware */
+  public static void preprocessBuffer(AddressableLEDBuffer buffer) {
     double sum = 0;
     for (int i = 0; i < length; i++) {
       var color = buffer.getLED(i);
@@ -1,37 +1,116 @@
 package frc.robot.subsystems;
 
 import com.ctre.phoenix.sensors.Pigeon2.AxisDirection;
+import com.ctre.phoenix.sensors.PigeonIMU_StatusFrame;
 import com.ctre.phoenix.sensors.WPI_Pigeon2;
-import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import com.pathplanner.lib.PathPlannerTrajectory;
+import com.pathplanner.lib.PathPlannerTrajectory.PathPlannerState;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
-import edu.wpi.first.math.geometry.Twist2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.wpilibj.Timer;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.lib.math.DerivativeEstimator;
+import frc.lib.math.SavitzkyGolayDerivative;
 import frc.robot.*;
-import frc.robot.util.GeometryUtils;
-
+import frc.robot.util.ChassisVelocityEstimator;
+import frc.robot.util.LatencyEstimator;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.PoseHistory;
+import frc.robot.util.SwerveDrivePipeline;
+import frc.robot.util.SwerveSetpointGenerator;
+import frc.robot.util.SwervePoseEstimator;
+import frc.robot.util.Telemetry;
+import frc.robot.util.TelemetryArray;
+import frc.robot.util.VisionGate;
 import java.util.Optional;
+import java.util.function.DoubleSupplier;
+
 
 public class Swerve extends SubsystemBase {
-  public SwerveDrivePoseEstimator swerveOdometry;
+  public SwervePoseEstimator swerveOdometry;
   public SwerveModule[] mSwerveMods;
   public WPI_Pigeon2 gyro;
 
   public Vision vision = new Vision();
 
-  public Swerve() {
+  private final OdometryThread odometryThread;
+  // Reused for every odometry sample, the estimator copies them
+  private final double[] odometryDistances = new double[4];
+  private final double[] odometryAngles = new double[4];
+
+  // Latest estimate, published after every drain so other threads can read it without locking
+  private volatile Pose2d latestPose = new Pose2d();
+  // Estimate and velocity at the end of every loop, readable from any thread
+  private final PoseHistory poseHistory =
+      new PoseHistory(Constants.Swerve.poseHistorySeconds, Robot.kDefaultPeriod);
+  private final ChassisVelocityEstimator velocityEstimator =
+      new ChassisVelocityEstimator(
+          Constants.Swerve.moduleTranslations, Constants.Swerve.velocityFilterTaps);
+  private final double[] moduleVelocities = new double[4];
+  private final double[] moduleAnglesRadians = new double[4];
+  // From the rotation drive() asks for to the gyro seeing it, for predicting the heading
+  private final LatencyEstimator driveLatency =
+      new LatencyEstimator(
+          Robot.kDefaultPeriod,
+          Constants.Swerve.maxDriveLatencyLoops,
+          0.99,
+          Constants.Swerve.driveLatencyMinExcitation,
+          Constants.Swerve.driveLatencyMinSamples,
+          Constants.Swerve.defaultDriveLatency);
+  private boolean droveSinceLastLoop = false;
+
+  /** Sensor values, read once per loop by {@link #updateInputs()} */
+  public static class Inputs {
+    // FPGA time the inputs were read at
+    public double timestampSeconds;
+    public double yawDegrees;
+    public double yawRateDegreesPerSecond;
+    public final double[] gravity = new double[3];
+  }
+
+  private final Inputs inputs = new Inputs();
+  private final double[] rawGyro = new double[3];
+  private final VisionGate visionGate =
+      new VisionGate(
+          Constants.Limelight.maxMahalanobisSquared,
+          Constants.Limelight.maxConsecutiveOdometryRejections,
+          Constants.Limelight.agreeingMeasurementsToOverrule);
+  private final double[] poseAtVision = new double[3];
+  private final Vision.PoseEstimate visionEstimate = new Vision.PoseEstimate();
+  private final DerivativeEstimator tiltRate =
+      new SavitzkyGolayDerivative(Constants.Swerve.tiltRateWindow);
+
+  private final SwerveDrivePipeline drivePipeline =
+      new SwerveDrivePipeline(
+          Constants.Swerve.fourModuleKinematics,
+          Constants.Swerve.secondOrderKinematics,
+          new SwerveSetpointGenerator(
+              Constants.Swerve.moduleTranslations,
+              Constants.Swerve.maxDriveAcceleration,
+              Constants.Swerve.maxAzimuthVelocity),
+          Constants.Swerve.maxSpeed,
+          Constants.Swerve.maxAngularVelocity);
+  // 0 with the elevator down, 1 all the way up
+  private final DoubleSupplier elevatorExtension;
+
+  /** @param elevatorExtension Elevator.getPositionPercent(), the center of mass rises with it */
+  public Swerve(DoubleSupplier elevatorExtension) {
+    this.elevatorExtension = elevatorExtension;
     gyro = new WPI_Pigeon2(Constants.Swerve.pigeonID);
     gyro.configFactoryDefault();
     gyro.configMountPose(AxisDirection.NegativeY, AxisDirection.PositiveZ);
+    // Yaw and angular rate are sampled by the odometry thread
+    gyro.setStatusFramePeriod(
+        PigeonIMU_StatusFrame.CondStatus_9_SixDeg_YPR, Constants.Swerve.odometryFramePeriodMs);
+    gyro.setStatusFramePeriod(
+        PigeonIMU_StatusFrame.BiasedStatus_2_Gyro, Constants.Swerve.odometryFramePeriodMs);
     zeroGyro();
 
     mSwerveMods =
@@ -48,34 +127,147 @@ public class Swerve extends SubsystemBase {
     Timer.delay(1.0);
     resetModulesToAbsolute();
 
+    updateInputs();
+
     // Class for swerve drive odometry. Odometry allows you to track the robot's position on the
     // field
     // over a course of a match using readings from your swerve drive encoders and swerve azimuth
     // encoders.
+    fillModulePositions();
     swerveOdometry =
-        new SwerveDrivePoseEstimator(
-            Constants.Swerve.swerveKinematics, getYaw(), getModulePositions(), new Pose2d());
-  }
-  private static ChassisSpeeds correctForDynamics(ChassisSpeeds originalSpeeds) {
-    final double LOOP_TIME_S = 0.02;
-    Pose2d futureRobotPose =
-        new Pose2d(
-            originalSpeeds.vxMetersPerSecond * LOOP_TIME_S,
-            originalSpeeds.vyMetersPerSecond * LOOP_TIME_S,
-            Rotation2d.fromRadians(originalSpeeds.omegaRadiansPerSecond * LOOP_TIME_S));
-    Twist2d twistForPose = GeometryUtils.log(futureRobotPose);
-    ChassisSpeeds updatedSpeeds =
-        new ChassisSpeeds(
-            twistForPose.dx / LOOP_TIME_S,
-            twistForPose.dy / LOOP_TIME_S,
-            twistForPose.dtheta / LOOP_TIME_S);
-    return updatedSpeeds;
-}
+        new SwervePoseEstimator(
+            Constants.Swerve.moduleTranslations,
+            1.0 / Constants.Swerve.odometryFrequency,
+            Math.toRadians(inputs.yawDegrees),
+            odometryDistances,
+            odometryAngles,
+            new Pose2d());
+
+    odometryThread =
+        new OdometryThread(mSwerveMods, gyro, Constants.Swerve.odometryFrequency);
+    odometryThread.start();
+    vision.start();
+  }
 
+  /**
+   * Reads the gyro and every module once. Everything else during the loop (commands included, they
+   * run after periodic) uses these values instead of going back to the hardware.
+   */
+  private void updateInputs() {
+    inputs.timestampSeconds = Timer.getFPGATimestamp();
+    inputs.yawDegrees = gyro.getYaw();
+    gyro.getRawGyro(rawGyro);
+    inputs.yawRateDegreesPerSecond = rawGyro[2];
+    gyro.getGravityVector(inputs.gravity);
+    for (SwerveModule mod : mSwerveMods) {
+      mod.updateInputs();
+    }
+  }
+
+  public Inputs getInputs() {
+    return inputs;
+  }
+
+  private void addOdometrySample(
+      double timestampSeconds, double yawDegrees, double[] distances, double[] angleDegrees) {
+    for (int i = 0; i < odometryAngles.length; i++) {
+      odometryAngles[i] = Math.toRadians(angleDegrees[i]);
+    }
+    swerveOdometry.updateWithTime(
+        timestampSeconds, Math.toRadians(yawDegrees), distances, odometryAngles);
+  }
+
+  /** Copies the module positions from this loop's inputs into the odometry buffers */
+  private void fillModulePositions() {
+    for (SwerveModule mod : mSwerveMods) {
+      odometryDistances[mod.moduleNumber] = mod.getDriveDistanceMeters();
+      odometryAngles[mod.moduleNumber] = Math.toRadians(mod.getAngleDegrees());
+    }
+  }
+
+  /** Feeds this loop's module velocities and gyro rate into the velocity estimator */
+  private void updateVelocity() {
+    for (SwerveModule mod : mSwerveMods) {
+      moduleVelocities[mod.moduleNumber] = mod.getDriveVelocityMPS();
+      moduleAnglesRadians[mod.moduleNumber] = Math.toRadians(mod.getAngleDegrees());
+    }
+    velocityEstimator.update(
+        moduleVelocities,
+        moduleAnglesRadians,
+        Math.toRadians(inputs.yawRateDegreesPerSecond),
+        swerveOdometry.getRotationRadians());
+  }
+
+  /** Feeds every sample the odometry thread took since the last call into the estimator */
+  private void updateOdometry() {
+    odometryThread.drain(this::addOdometrySample);
+    latestPose = swerveOdometry.getEstimatedPosition();
+  }
+
+  private double lastDriveTimestamp = 0;
+
+  // Path being followed in auto, for its acceleration
+  private PathPlannerTrajectory activeTrajectory = null;
+  private double activeTrajectoryStart = 0;
+  private final double[] trajectoryAcceleration = new double[3];
+
+  /** Time since the last drive call, falling back to the nominal period if it looks wrong */
+  private double measureLoopTime() {
+    double now = Timer.getFPGATimestamp();
+    double dt = now - lastDriveTimestamp;
+    lastDriveTimestamp = now;
+    // First call, or we weren't driving for a while
+    if (dt <= 0 || dt > 5 * Robot.kDefaultPeriod) {
+      // The last setpoint is stale, start from what the robot is actually doing
+      ChassisSpeeds measured = getRobotRelativeSpeeds();
+      ChassisSpeeds measuredField = getFieldRelativeSpeeds();
+      drivePipeline.reset(
+          measured.vxMetersPerSecond,
+          measured.vyMetersPerSecond,
+          measured.omegaRadiansPerSecond,
+          measuredField.vxMetersPerSecond,
+          measuredField.vyMetersPerSecond,
+          moduleVelocities,
+          moduleAnglesRadians);
+      return Robot.kDefaultPeriod;
+    }
+    return dt;
+  }
+
+  /** Rises linearly with the elevator */
+  private double getCenterOfMassHeight() {
+    double extension = MathUtil.clamp(elevatorExtension.getAsDouble(), 0, 1);
+    return Constants.Swerve.centerOfMassHeightRetracted
+        + extension
+            * (Constants.Swerve.centerOfMassHeightExtended
+                - Constants.Swerve.centerOfMassHeightRetracted);
+  }
 
   public void drive(
       Translation2d translation, double rotation, boolean fieldRelative, boolean isOpenLoop) {
-    var speeds = new ChassisSpeeds(translation.getX(), translation.getY(), rotation);
+    drive(translation.getX(), translation.getY(), rotation, fieldRelative, isOpenLoop);
+  }
+
+  public void drive(
+      double xSpeed, double ySpeed, double rotation, boolean fieldRelative, boolean isOpenLoop) {
+    drive(xSpeed, ySpeed, rotation, 0, 0, 0, fieldRelative, isOpenLoop);
+  }
+
+  /**
+   * @param xAcceleration Where the speeds are going, in the same frame as them. Fed forward to the
+   *     modules, along with how fast that turns them. All zero to use how the setpoint changed,
+   *     which is also used when the setpoint generator cuts the step short.
+   * @param angularAcceleration Radians per second squared
+   */
+  private void drive(
+      double xSpeed,
+      double ySpeed,
+      double rotation,
+      double xAcceleration,
+      double yAcceleration,
+      double angularAcceleration,
+      boolean fieldRelative,
+      boolean isOpenLoop) {
     // fieldRelative: When true, the positional inputs are oriented to the field.
     // Pressing up moves the robot up relative to the field, regardless of the robot's rotation.
     // When false, think of it like strafing. Pressing up will move the robot forward,
@@ -83,40 +275,128 @@ public class Swerve extends SubsystemBase {
     // In teleop, this is controlled by a button that is held down.
     // Note that the robot does not have a concept of the field,
     // and the gyro must be configured according to starting orientation.
-    speeds = correctForDynamics(speeds); //jimmy p omegabytes
-    var robotRelative =
-        fieldRelative
-            ? ChassisSpeeds.fromFieldRelativeSpeeds(speeds, getPose().getRotation())
-            : speeds;
-    SwerveModuleState[] swerveModuleStates =
-        Constants.Swerve.swerveKinematics.toSwerveModuleStates(robotRelative);
-    // Normalizes wheel speeds by the max (wheel) speed.
-    SwerveDriveKinematics.desaturateWheelSpeeds(
-        swerveModuleStates,
-        robotRelative,
-        Constants.Swerve.maxSpeed,
-        Constants.Swerve.maxSpeed,
-        Constants.Swerve.maxAngularVelocity);
-
+    double loopTime = measureLoopTime();
+    drivePipeline.calculate(
+        xSpeed,
+        ySpeed,
+        rotation,
+        xAcceleration,
+        yAcceleration,
+        angularAcceleration,
+        fieldRelative,
+        getPredictedHeadingRadians(),
+        swerveOdometry.getRotationRadians(),
+        getCenterOfMassHeight(),
+        loopTime);
+    droveSinceLastLoop = true;
+    double[] moduleSpeeds = drivePipeline.getModuleSpeeds();
+    double[] moduleAngles = drivePipeline.getModuleAngles();
+    double[] moduleAccelerations = drivePipeline.getModuleAccelerations();
+    double[] moduleAngleVelocities = drivePipeline.getModuleAngleVelocities();
     for (SwerveModule mod : mSwerveMods) {
-      mod.setDesiredState(swerveModuleStates[mod.moduleNumber], isOpenLoop);
+      int i = mod.moduleNumber;
+      mod.setDesiredState(
+          moduleSpeeds[i],
+          moduleAngles[i],
+          moduleAccelerations[i],
+          moduleAngleVelocities[i],
+          isOpenLoop);
     }
   }
 
+  /**
+   * The estimated heading pushed forward by the gyro rate over the measured latency between
+   * commanding the modules and the gyro seeing the result.
+   */
+  private double getPredictedHeadingRadians() {
+    return swerveOdometry.getRotationRadians()
+        + Math.toRadians(inputs.yawRateDegreesPerSecond) * driveLatency.getLatencySeconds();
+  }
+
+  /**
+   * For path following. Goes through the setpoint generator like teleop, closed loop. While a path
+   * is running, its acceleration is fed forward too.
+   */
+  public void driveRobotRelative(ChassisSpeeds speeds) {
+    trajectoryAcceleration[0] = 0;
+    trajectoryAcceleration[1] = 0;
+    trajectoryAcceleration[2] = 0;
+    if (activeTrajectory != null) {
+      double elapsed = Timer.getFPGATimestamp() - activeTrajectoryStart;
+      if (elapsed <= activeTrajectory.getTotalTimeSeconds()) {
+        sampleTrajectoryAcceleration(elapsed, trajectoryAcceleration);
+      }
+    }
+    drive(
+        speeds.vxMetersPerSecond,
+        speeds.vyMetersPerSecond,
+        speeds.omegaRadiansPerSecond,
+        trajectoryAcceleration[0],
+        trajectoryAcceleration[1],
+        trajectoryAcceleration[2],
+        false,
+        false);
+  }
+
+  /**
+   * Called by PPSwerveControllerCommand when it starts following a path (see RobotContainer), with
+   * the path already flipped for the alliance.
+   */
+  public void setActiveTrajectory(PathPlannerTrajectory trajectory) {
+    activeTrajectory = trajectory;
+    activeTrajectoryStart = Timer.getFPGATimestamp();
+  }
+
+  /** Called when the path command ends, finished or interrupted (see RobotContainer) */
+  public void clearActiveTrajectory() {
+    activeTrajectory = null;
+  }
+
+  /** Robot relative {ax, ay, alpha} of the active path, elapsed seconds into it */
+  private void sampleTrajectoryAcceleration(double elapsed, double[] out) {
+    PathPlannerState state = (PathPlannerState) activeTrajectory.sample(elapsed);
+    PathPlannerState next =
+        (PathPlannerState) activeTrajectory.sample(elapsed + Robot.kDefaultPeriod);
+    // Along the path plus centripetal. The pose's rotation is the direction of travel, the robot's
+    // heading is holonomicRotation.
+    double tangential = state.accelerationMetersPerSecondSq;
+    double normal =
+        state.velocityMetersPerSecond * state.velocityMetersPerSecond * state.curvatureRadPerMeter;
+    double travel = state.poseMeters.getRotation().getRadians();
+    double fieldAx = tangential * Math.cos(travel) - normal * Math.sin(travel);
+    double fieldAy = tangential * Math.sin(travel) + normal * Math.cos(travel);
+    double heading = swerveOdometry.getRotationRadians();
+    double cos = Math.cos(heading);
+    double sin = Math.sin(heading);
+    out[0] = fieldAx * cos + fieldAy * sin;
+    out[1] = -fieldAx * sin + fieldAy * cos;
+    out[2] =
+        (next.holonomicAngularVelocityRadPerSec - state.holonomicAngularVelocityRadPerSec)
+            / Robot.kDefaultPeriod;
+  }
+
   /* Used by SwerveControllerCommand in Auto, instead of the drive method above, which is used by teleop */
   public void setModuleStates(SwerveModuleState[] desiredStates) {
-    SwerveDriveKinematics.desaturateWheelSpeeds(desiredStates, Constants.Swerve.maxSpeed);
+    // Same as SwerveDriveKinematics.desaturateWheelSpeeds(desiredStates, maxSpeed), which boxes
+    // the states into a list to find the max
+    double realMaxSpeed = 0;
+    for (SwerveModuleState state : desiredStates) {
+      realMaxSpeed = Math.max(realMaxSpeed, Math.abs(state.speedMetersPerSecond));
+    }
+    double scale =
+        realMaxSpeed > Constants.Swerve.maxSpeed ? Constants.Swerve.maxSpeed / realMaxSpeed : 1;
 
     for (SwerveModule mod : mSwerveMods) {
-      mod.setDesiredState(desiredStates[mod.moduleNumber], false);
+      SwerveModuleState state = desiredStates[mod.moduleNumber];
+      mod.setDesiredState(state.speedMetersPerSecond * scale, state.angle.getDegrees(), false);
     }
   }
 
   public void lockModules() {
     for (SwerveModule mod : mSwerveMods) {
+      // Note that this angle is in radians, like the Rotation2d constructor this used to go through
       mod.setDesiredState(
-          new SwerveModuleState(0, new Rotation2d(90 * Math.ceil((mod.moduleNumber % 3) / 2) - 45)),
-          true);
+          0, Math.toDegrees(90 * Math.ceil((mod.moduleNumber % 3) / 2) - 45), true);
     }
   }
 
@@ -128,12 +408,69 @@ public class Swerve extends SubsystemBase {
     return run(this::lockModules);
   }
 
+  /**
+   * Gates a vision estimate against odometry, then feeds it to the estimator with its own standard
+   * deviations.
+   *
+   * @return Whether it was used
+   */
+  private boolean addVisionMeasurement(Vision.PoseEstimate est) {
+    double x = est.x;
+    double y = est.y;
+    double theta = est.theta;
+    double distance =
+        swerveOdometry.getMahalanobisSquared(
+            x, y, theta, est.timestampSeconds, est.stdDevX, est.stdDevY, est.stdDevTheta);
+    // No history means nothing to disagree with
+    if (swerveOdometry.getPoseAt(est.timestampSeconds, poseAtVision)
+        && !visionGate.accept(
+            distance,
+            x - poseAtVision[0],
+            y - poseAtVision[1],
+            MathUtil.angleModulus(theta - poseAtVision[2]),
+            est.stdDevX,
+            est.stdDevY,
+            est.stdDevTheta,
+            est.tagCount)) {
+      vision.recordRejectedByOdometry();
+      return false;
+    }
+    swerveOdometry.addVisionMeasurement(
+        x, y, theta, est.timestampSeconds, est.stdDevX, est.stdDevY, est.stdDevTheta);
+    vision.recordAccepted(est);
+    return true;
+  }
+
+  /** Never blocks, so it is safe to call from any thread */
   public Pose2d getPose() {
-    return swerveOdometry.getEstimatedPosition();
+    return latestPose;
+  }
+
+  /**
+   * Where the robot was at a past time (FPGA seconds, up to 1.5s ago), as it is estimated now. Main
+   * thread only.
+   */
+  public Optional<Pose2d> getPoseAt(double timestampSeconds) {
+    return swerveOdometry.getPoseAt(timestampSeconds);
+  }
+
+  /**
+   * The last {@link Constants.Swerve#poseHistorySeconds} of estimated poses and field relative
+   * velocities, one entry per loop. Safe to read from any thread.
+   */
+  public PoseHistory getPoseHistory() {
+    return poseHistory;
   }
 
   public void resetOdometry(Pose2d pose) {
-    swerveOdometry.resetPosition(getYaw(), getModulePositions(), pose);
+    // Samples from before the reset would be integrated on top of the new pose
+    odometryThread.discard();
+    poseHistory.clear();
+    fillModulePositions();
+    swerveOdometry.resetPosition(
+        Math.toRadians(inputs.yawDegrees), odometryDistances, odometryAngles, pose);
+    latestPose = swerveOdometry.getEstimatedPosition();
+    visionGate.reset();
   }
 
   public SwerveModuleState[] getModuleStates() {
@@ -154,14 +491,16 @@ public class Swerve extends SubsystemBase {
 
   public void zeroGyro() {
     gyro.setYaw(0);
+    inputs.yawDegrees = 0;
   }
 
   public void gyroFlip180() {
-    gyro.setYaw(gyro.getYaw() + 180);
+    gyro.setYaw(inputs.yawDegrees + 180);
+    inputs.yawDegrees += 180;
   }
 
   public Rotation2d getYaw() {
-    return gyro.getRotation2d();
+    return Rotation2d.fromDegrees(inputs.yawDegrees);
   }
 
   public void resetModulesToAbsolute() {
@@ -174,10 +513,9 @@ public class Swerve extends SubsystemBase {
     return runOnce(this::resetModulesToAbsolute);
   }
 
+  /** Shared with the inputs, so don't modify it */
   public double[] getGravity() {
-    double[] grav = new double[3];
-    gyro.getGravityVector(grav);
-    return grav;
+    return inputs.gravity;
   }
 
   public double getTiltMagnitude() {
@@ -185,61 +523,143 @@ public class Swerve extends SubsystemBase {
     return Math.sqrt(grav[0] * grav[0] + grav[1] * grav[1]);
   }
 
+  /** How fast {@link #getTiltMagnitude()} changes, per second. Positive while tipping further. */
+  public double getTiltRate() {
+    return tiltRate.getRate();
+  }
+
   public Rotation2d getTiltDirection() {
     double[] grav = getGravity();
     return new Rotation2d(grav[0], grav[1]);
   }
 
-  double previousRadians;
-
   /**
-   * Returns velocity in radians per second. This is intended to be used for dashboard graphing,
-   * etc. not anything that relies on accuracy
+   * Measured velocity relative to the robot, filtered over the last few loops. Updated in place
+   * every loop, so don't modify it. Main thread only.
    */
-  private double getBadAngularVelocityEstimate(Rotation2d yaw) {
-    double currentRadians = yaw.getRadians();
-    previousRadians = currentRadians;
+  public ChassisSpeeds getRobotRelativeSpeeds() {
+    return velocityEstimator.getRobotRelativeSpeeds();
+  }
 
-    double velocity = (currentRadians - previousRadians) * (1.0 / Robot.kDefaultPeriod);
-    return velocity;
+  /** Same as {@link #getRobotRelativeSpeeds()}, but relative to the field */
+  public ChassisSpeeds getFieldRelativeSpeeds() {
+    return velocityEstimator.getFieldRelativeSpeeds();
   }
 
-  double[] previousDistances = new double[] {0, 0, 0, 0};
+  /*
+   * Telemetry schema. Per-module debug values on /Telemetry/SwerveModules:
+   * [0-4] module 0: cancoder (deg), velocity (m/s), distance (m), angle (deg),
+   *       drive current (A)
+   * [5-19] the same for modules 1-3
+   * And on /Telemetry/Swerve:
+   * [0] turning velocity (rad/s), [1] gyro yaw (deg), [2] robot x (m), [3] robot y (m),
+   * [4] drive latency (s), [5] tilt rate (1/s)
+   */
+  private static final int telemetryModuleStride = 5;
+
+  private final TelemetryArray moduleTelemetry =
+      new TelemetryArray(
+          "SwerveModules",
+          Telemetry.Level.DEBUG,
+          10,
+          "Mod 0 Cancoder",
+          "Mod 0 Velocity",
+          "Mod 0 distance",
+          "Mod 0 Angle",
+          "Mod 0 Drive current",
+          "Mod 1 Cancoder",
+          "Mod 1 Velocity",
+          "Mod 1 distance",
+          "Mod 1 Angle",
+          "Mod 1 Drive current",
+          "Mod 2 Cancoder",
+          "Mod 2 Velocity",
+          "Mod 2 distance",
+          "Mod 2 Angle",
+          "Mod 2 Drive current",
+          "Mod 3 Cancoder",
+          "Mod 3 Velocity",
+          "Mod 3 distance",
+          "Mod 3 Angle",
+          "Mod 3 Drive current");
+  private final TelemetryArray telemetry =
+      new TelemetryArray(
+          "Swerve",
+          Telemetry.Level.NORMAL,
+          50,
+          "Turning velocity",
+          "Gyro yaw",
+          "Robot X",
+          "Robot Y",
+          "Drive latency",
+          "Tilt rate");
+
+  private final LoopProfiler.Section profile = LoopProfiler.section("Swerve");
+  private final LoopProfiler.Section visionProfile = LoopProfiler.section("Vision");
 
   @Override
   public void periodic() {
+    profile.start();
+    updateInputs();
+    updateOdometry();
+    tiltRate.addSample(inputs.timestampSeconds, getTiltMagnitude());
+
     Rotation2d yaw = getYaw();
-    SwerveModulePosition[] poses = getModulePositions();
-    swerveOdometry.update(yaw, poses);
 
-    int modNumber = 0;
-    for (SwerveModulePosition p : poses) {
-      SwerveModule mod = mSwerveMods[modNumber];
-      double dist = p.distanceMeters;
-      SmartDashboard.putNumber("Mod " + modNumber + " Cancoder", mod.getCanCoder().getDegrees());
-      SmartDashboard.putNumber(
-          /* Bad estimate, only for graphing/etc */
-          "Mod " + modNumber + " Est. Velocity",
-          (dist - previousDistances[modNumber]) * (1.0 / Robot.kDefaultPeriod));
-      SmartDashboard.putNumber("Mod " + modNumber + " distance", dist);
-      SmartDashboard.putNumber("Mod " + modNumber + " Angle", p.angle.getDegrees());
-      SmartDashboard.putNumber("Mod " + modNumber + " Drive current", mod.getDriveCurrent());
-      previousDistances[modNumber] = dist;
-      modNumber++;
+    for (SwerveModule mod : mSwerveMods) {
+      int modNumber = mod.moduleNumber;
+      int base = modNumber * telemetryModuleStride;
+      moduleTelemetry.set(base, mod.getInputs().canCoderDegrees);
+      moduleTelemetry.set(base + 1, mod.getDriveVelocityMPS());
+      moduleTelemetry.set(base + 2, mod.getDriveDistanceMeters());
+      moduleTelemetry.set(base + 3, mod.getAngleDegrees());
+      moduleTelemetry.set(base + 4, mod.getDriveCurrent());
     }
-
-    Optional<Vision.PoseEstimate> poseEst = vision.getEstimatedPose();
-    if (poseEst.isPresent()) {
-      Vision.PoseEstimate est = poseEst.get();
-      swerveOdometry.addVisionMeasurement(est.estimatedPose, est.timestampSeconds);
+    moduleTelemetry.publish();
+
+    updateVelocity();
+    ChassisSpeeds fieldSpeeds = getFieldRelativeSpeeds();
+    // The raw gyro rate, the filtered one would add its own delay
+    if (droveSinceLastLoop) {
+      driveLatency.update(
+          drivePipeline.getSetpointOmega(), Math.toRadians(inputs.yawRateDegreesPerSecond));
+    } else {
+      driveLatency.interrupt();
+    }
+    droveSinceLastLoop = false;
+
+    visionProfile.start();
+    vision.setRobotState(getTiltMagnitude(), fieldSpeeds.omegaRadiansPerSecond);
+    boolean gotVision = false;
+    while (vision.pollEstimate(visionEstimate)) {
+      if (addVisionMeasurement(visionEstimate)) {
+        gotVision = true;
+      }
+    }
+    if (gotVision) {
+      latestPose = swerveOdometry.getEstimatedPosition();
     }
+    vision.publishTelemetry();
+    visionProfile.stop();
 
-    SmartDashboard.putNumber("Turning velocity", getBadAngularVelocityEstimate(yaw));
+    poseHistory.record(
+        swerveOdometry.getLatestTimestamp(),
+        swerveOdometry.getX(),
+        swerveOdometry.getY(),
+        swerveOdometry.getRotationRadians(),
+        fieldSpeeds.vxMetersPerSecond,
+        fieldSpeeds.vyMetersPerSecond,
+        fieldSpeeds.omegaRadiansPerSecond);
 
-    SmartDashboard.putNumber("Gyro yaw", yaw.getDegrees());
+    telemetry.set(0, fieldSpeeds.omegaRadiansPerSecond);
+    telemetry.set(1, yaw.getDegrees());
 
     Pose2d pose = getPose();
-    SmartDashboard.putNumber("Robot X", pose.getX());
-    SmartDashboard.putNumber("Robot Y", pose.getY());
+    telemetry.set(2, pose.getX());
+    telemetry.set(3, pose.getY());
+    telemetry.set(4, driveLatency.getLatencySeconds());
+    telemetry.set(5, tiltRate.getRate());
+    telemetry.publish();
+    profile.stop();
   }
 }
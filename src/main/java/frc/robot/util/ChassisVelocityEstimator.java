@@ -0,0 +1,99 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.filter.LinearFilter;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Measured chassis velocity. Translation comes from the module velocities through forward
+ * kinematics (least squares, like SwerveDriveKinematics.toChassisSpeeds()), rotation from the gyro,
+ * which doesn't care about wheel slip. Each axis goes through a moving average to take the edge off
+ * sensor noise.
+ *
+ * <p>Nothing allocates after construction. The ChassisSpeeds returned are updated in place.
+ */
+public class ChassisVelocityEstimator {
+  private final int moduleCount;
+  // 2 x (2 * moduleCount), row major, the vx and vy rows of the pseudo-inverse
+  private final double[] forwardKinematics;
+
+  private final LinearFilter vxFilter;
+  private final LinearFilter vyFilter;
+  private final LinearFilter omegaFilter;
+
+  private final ChassisSpeeds robotRelative = new ChassisSpeeds();
+  private final ChassisSpeeds fieldRelative = new ChassisSpeeds();
+
+  /** @param windowSize How many updates to average over */
+  public ChassisVelocityEstimator(Translation2d[] moduleLocations, int windowSize) {
+    moduleCount = moduleLocations.length;
+    SimpleMatrix inverseKinematics = new SimpleMatrix(moduleCount * 2, 3);
+    for (int i = 0; i < moduleCount; i++) {
+      inverseKinematics.setRow(i * 2, 0, 1, 0, -moduleLocations[i].getY());
+      inverseKinematics.setRow(i * 2 + 1, 0, 0, 1, moduleLocations[i].getX());
+    }
+    SimpleMatrix pseudoInverse = inverseKinematics.pseudoInverse();
+    forwardKinematics = new double[2 * moduleCount * 2];
+    for (int row = 0; row < 2; row++) {
+      for (int col = 0; col < moduleCount * 2; col++) {
+        forwardKinematics[row * moduleCount * 2 + col] = pseudoInverse.get(row, col);
+      }
+    }
+
+    vxFilter = LinearFilter.movingAverage(windowSize);
+    vyFilter = LinearFilter.movingAverage(windowSize);
+    omegaFilter = LinearFilter.movingAverage(windowSize);
+  }
+
+  /**
+   * Call once per loop with fresh sensor values.
+   *
+   * @param speeds Module drive velocities in meters per second
+   * @param anglesRadians Module angles
+   * @param gyroRate Yaw rate in radians per second, counterclockwise positive
+   * @param headingRadians Field relative heading, for the field relative speeds
+   */
+  public void update(
+      double[] speeds, double[] anglesRadians, double gyroRate, double headingRadians) {
+    int columns = moduleCount * 2;
+    double vx = 0;
+    double vy = 0;
+    for (int i = 0; i < moduleCount; i++) {
+      double moduleVx = speeds[i] * Math.cos(anglesRadians[i]);
+      double moduleVy = speeds[i] * Math.sin(anglesRadians[i]);
+      vx += forwardKinematics[i * 2] * moduleVx + forwardKinematics[i * 2 + 1] * moduleVy;
+      vy += forwardKinematics[columns + i * 2] * moduleVx
+          + forwardKinematics[columns + i * 2 + 1] * moduleVy;
+    }
+
+    robotRelative.vxMetersPerSecond = vxFilter.calculate(vx);
+    robotRelative.vyMetersPerSecond = vyFilter.calculate(vy);
+    robotRelative.omegaRadiansPerSecond = omegaFilter.calculate(gyroRate);
+
+    double cos = Math.cos(headingRadians);
+    double sin = Math.sin(headingRadians);
+    fieldRelative.vxMetersPerSecond =
+        robotRelative.vxMetersPerSecond * cos - robotRelative.vyMetersPerSecond * sin;
+    fieldRelative.vyMetersPerSecond =
+        robotRelative.vxMetersPerSecond * sin + robotRelative.vyMetersPerSecond * cos;
+    fieldRelative.omegaRadiansPerSecond = robotRelative.omegaRadiansPerSecond;
+  }
+
+  /** Starts the filters over, e.g. after the robot was moved by hand while disabled */
+  public void reset() {
+    vxFilter.reset();
+    vyFilter.reset();
+    omegaFilter.reset();
+  }
+
+  /** Updated in place by update(), so don't modify it */
+  public ChassisSpeeds getRobotRelativeSpeeds() {
+    return robotRelative;
+  }
+
+  /** Updated in place by update(), so don't modify it */
+  public ChassisSpeeds getFieldRelativeSpeeds() {
+    return fieldRelative;
+  }
+}
@@ -0,0 +1,99 @@
+package frc.robot.util;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.util.datalog.StringLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.RobotController;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Records every garbage collection. Each one goes to the on-robot log under /gc/pause as {duration
+ * (ms), heap used before (MB), heap used after (MB)}, timestamped with the FPGA time the collection
+ * started, so it lines up with the /profiler/overrun entries. The collector and cause go to
+ * /gc/cause at the same timestamp.
+ *
+ * <p>The JVM reports collections on its own notification thread, so the per-window totals are
+ * synchronized.
+ */
+public final class GcMonitor {
+  private static final RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+  private static final DoubleArrayLogEntry pauseLog =
+      new DoubleArrayLogEntry(DataLogManager.getLog(), "/gc/pause");
+  private static final StringLogEntry causeLog =
+      new StringLogEntry(DataLogManager.getLog(), "/gc/cause");
+
+  private static boolean installed = false;
+  private static int pauses = 0;
+  private static double pauseTotalMs = 0;
+  private static double pauseMaxMs = 0;
+
+  private GcMonitor() {}
+
+  public static synchronized void install() {
+    if (installed) {
+      return;
+    }
+    installed = true;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (bean instanceof NotificationEmitter) {
+        ((NotificationEmitter) bean)
+            .addNotificationListener(
+                (notification, handback) -> {
+                  if (notification
+                      .getType()
+                      .equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    record(
+                        GarbageCollectionNotificationInfo.from(
+                            (CompositeData) notification.getUserData()));
+                  }
+                },
+                null,
+                null);
+      }
+    }
+  }
+
+  private static void record(GarbageCollectionNotificationInfo info) {
+    GcInfo gc = info.getGcInfo();
+    double durationMs = gc.getDuration();
+    // GcInfo times are milliseconds since the JVM started, move them onto the FPGA clock
+    long startFpga =
+        RobotController.getFPGATime() - (runtime.getUptime() - gc.getStartTime()) * 1000;
+    pauseLog.append(
+        new double[] {durationMs, heapUsedMB(gc, true), heapUsedMB(gc, false)}, startFpga);
+    causeLog.append(info.getGcName() + ": " + info.getGcCause(), startFpga);
+    synchronized (GcMonitor.class) {
+      pauses++;
+      pauseTotalMs += durationMs;
+      pauseMaxMs = Math.max(pauseMaxMs, durationMs);
+    }
+  }
+
+  private static double heapUsedMB(GcInfo gc, boolean before) {
+    long used = 0;
+    var usages = before ? gc.getMemoryUsageBeforeGc() : gc.getMemoryUsageAfterGc();
+    for (var usage : usages.values()) {
+      used += usage.getUsed();
+    }
+    return used / (1024.0 * 1024.0);
+  }
+
+  /**
+   * Copies {pauses, total pause (ms), longest pause (ms)} since the last call into out, and starts
+   * a new window.
+   */
+  public static synchronized void drainWindow(double[] out) {
+    out[0] = pauses;
+    out[1] = pauseTotalMs;
+    out[2] = pauseMaxMs;
+    pauses = 0;
+    pauseTotalMs = 0;
+    pauseMaxMs = 0;
+  }
+}
@@ -8,6 +8,8 @@ import edu.wpi.first.math.geometry.Twist2d;
 
 public class GeometryUtils {
   private static final double kEps = 1E-9;
+  // Rotation2d treats anything shorter than this as no rotation
+  private static final double kRotationEps = 1E-6;
 
 
   public static Pose2d exp(final Twist2d delta) {
@@ -26,16 +28,42 @@ public class GeometryUtils {
         new Rotation2d(cos_theta, sin_theta));
   }
 
+  /**
+   * Same as {@link #exp(Twist2d)}, but without allocating. Gives bit-for-bit the same result.
+   *
+   * @param out Receives {x, y, theta in radians}
+   */
+  public static void exp(final double dx, final double dy, final double dtheta, double[] out) {
+    double sin_theta = Math.sin(dtheta);
+    double cos_theta = Math.cos(dtheta);
+    double s, c;
+    if (Math.abs(dtheta) < kEps) {
+      s = 1.0 - 1.0 / 6.0 * dtheta * dtheta;
+      c = .5 * dtheta;
+    } else {
+      s = sin_theta / dtheta;
+      c = (1.0 - cos_theta) / dtheta;
+    }
+    out[0] = dx * s - dy * c;
+    out[1] = dx * c + dy * s;
+    // new Rotation2d(cos, sin) normalizes before taking the angle
+    double magnitude = Math.hypot(cos_theta, sin_theta);
+    if (magnitude > kRotationEps) {
+      out[2] = Math.atan2(sin_theta / magnitude, cos_theta / magnitude);
+    } else {
+      out[2] = 0.0;
+    }
+  }
+
   public static Twist2d log(final Pose2d transform) {
     final double dtheta = transform.getRotation().getRadians();
     final double half_dtheta = 0.5 * dtheta;
-    final double cos_minus_one = Math.cos(transform.getRotation().getRadians()) - 1.0;
+    final double cos_minus_one = Math.cos(dtheta) - 1.0;
     double halftheta_by_tan_of_halfdtheta;
     if (Math.abs(cos_minus_one) < kEps) {
       halftheta_by_tan_of_halfdtheta = 1.0 - 1.0 / 12.0 * dtheta * dtheta;
     } else {
-      halftheta_by_tan_of_halfdtheta =
-          -(half_dtheta * Math.sin(transform.getRotation().getRadians())) / cos_minus_one;
+      halftheta_by_tan_of_halfdtheta = -(half_dtheta * Math.sin(dtheta)) / cos_minus_one;
     }
     final Translation2d translation_part =
         transform
@@ -43,4 +71,33 @@ public class GeometryUtils {
             .rotateBy(new Rotation2d(halftheta_by_tan_of_halfdtheta, -half_dtheta));
     return new Twist2d(translation_part.getX(), translation_part.getY(), dtheta);
   }
-}
\ No newline at end of file
+
+  /**
+   * Same as {@link #log(Pose2d)}, but without allocating. Gives bit-for-bit the same result.
+   *
+   * @param theta Rotation of the transform in radians
+   * @param out Receives {dx, dy, dtheta}
+   */
+  public static void log(final double x, final double y, final double theta, double[] out) {
+    final double half_dtheta = 0.5 * theta;
+    final double cos_minus_one = Math.cos(theta) - 1.0;
+    double halftheta_by_tan_of_halfdtheta;
+    if (Math.abs(cos_minus_one) < kEps) {
+      halftheta_by_tan_of_halfdtheta = 1.0 - 1.0 / 12.0 * theta * theta;
+    } else {
+      halftheta_by_tan_of_halfdtheta = -(half_dtheta * Math.sin(theta)) / cos_minus_one;
+    }
+    // Rotate by (halftheta_by_tan_of_halfdtheta, -half_dtheta), normalized the same way
+    // new Rotation2d(x, y) does
+    double magnitude = Math.hypot(halftheta_by_tan_of_halfdtheta, half_dtheta);
+    double cos = 1.0;
+    double sin = 0.0;
+    if (magnitude > kRotationEps) {
+      cos = halftheta_by_tan_of_halfdtheta / magnitude;
+      sin = -half_dtheta / magnitude;
+    }
+    out[0] = x * cos - y * sin;
+    out[1] = x * sin + y * cos;
+    out[2] = theta;
+  }
+}
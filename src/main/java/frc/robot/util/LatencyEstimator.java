@@ -0,0 +1,141 @@
+package frc.robot.util;
+
+/**
+ * Measures how long it takes for a command to show up in a measurement, e.g. from the chassis
+ * rotation we ask for to the rotation the gyro sees. Once per loop it is given the command sent
+ * last loop and the measurement read this loop, and it works out which delay lines the two up
+ * best.
+ *
+ * <p>For every candidate delay of 0 to maxLagLoops loops it keeps a running sum of squared
+ * differences between the measurement and the command from that many loops back, decaying so that
+ * old samples fade out. The smallest sum is the delay, refined between loops by fitting a parabola
+ * through it and its neighbours. Only loops where the command actually changed over the window
+ * count: while it holds still every delay fits equally well and would just wash out what was
+ * learned.
+ *
+ * <p>A delay of 0 loops means the measurement read at the start of the next loop already shows the
+ * command. The command is held for a whole loop, so on average it is half a period old by then and
+ * the latency is (lag + 0.5) loop periods. That includes how long the mechanism takes to respond,
+ * which is also time the robot keeps doing what it was doing.
+ *
+ * <p>Nothing allocates after construction. Main thread only.
+ */
+public class LatencyEstimator {
+  private final double periodSeconds;
+  private final double decay;
+  private final double minExcitation;
+  private final int minSamples;
+  private final double defaultLatencySeconds;
+
+  // Commands, newest at head. history[(head - k) mod length] is from k updates ago.
+  private final double[] history;
+  private int head = 0;
+  // How many entries of history are from consecutive loops
+  private int filled = 0;
+
+  private final double[] cost;
+  private int samples = 0;
+
+  /**
+   * @param periodSeconds Loop period
+   * @param maxLagLoops Longest delay to look for, in loops
+   * @param decay How much of the running sums is kept per sample, e.g. 0.99 forgets over roughly
+   *     100 samples
+   * @param minExcitation How much the command has to change over the window for a loop to count
+   * @param minSamples Loops that have to count before the measurement is trusted
+   * @param defaultLatencySeconds What to use until then
+   */
+  public LatencyEstimator(
+      double periodSeconds,
+      int maxLagLoops,
+      double decay,
+      double minExcitation,
+      int minSamples,
+      double defaultLatencySeconds) {
+    this.periodSeconds = periodSeconds;
+    this.decay = decay;
+    this.minExcitation = minExcitation;
+    this.minSamples = minSamples;
+    this.defaultLatencySeconds = defaultLatencySeconds;
+    history = new double[maxLagLoops + 1];
+    cost = new double[maxLagLoops + 1];
+  }
+
+  /**
+   * @param command What was asked for last loop
+   * @param measurement What was measured this loop
+   */
+  public void update(double command, double measurement) {
+    head = (head + 1) % history.length;
+    history[head] = command;
+    filled = Math.min(filled + 1, history.length);
+    if (filled < history.length) {
+      return;
+    }
+
+    double min = command;
+    double max = command;
+    for (double past : history) {
+      min = Math.min(min, past);
+      max = Math.max(max, past);
+    }
+    if (max - min < minExcitation) {
+      return;
+    }
+
+    for (int lag = 0; lag < cost.length; lag++) {
+      double error = measurement - history[(head - lag + history.length) % history.length];
+      cost[lag] = cost[lag] * decay + error * error;
+    }
+    samples++;
+  }
+
+  /**
+   * Call when a loop was skipped, e.g. nothing was commanded, so that samples on either side of the
+   * gap aren't lined up with each other. What was learned so far is kept.
+   */
+  public void interrupt() {
+    filled = 0;
+  }
+
+  /** Forgets everything */
+  public void reset() {
+    filled = 0;
+    samples = 0;
+    for (int i = 0; i < cost.length; i++) {
+      cost[i] = 0;
+    }
+  }
+
+  /** Delay in loops, between 0 and maxLagLoops, or NaN until there are enough samples */
+  public double getLagLoops() {
+    if (samples < minSamples) {
+      return Double.NaN;
+    }
+    int best = 0;
+    for (int lag = 1; lag < cost.length; lag++) {
+      if (cost[lag] < cost[best]) {
+        best = lag;
+      }
+    }
+    if (best == 0 || best == cost.length - 1) {
+      return best;
+    }
+    double before = cost[best - 1];
+    double after = cost[best + 1];
+    double curvature = before - 2 * cost[best] + after;
+    if (curvature <= 0) {
+      return best;
+    }
+    return best + Math.max(-0.5, Math.min(0.5, 0.5 * (before - after) / curvature));
+  }
+
+  /** Seconds from sending a command to it showing up in the measurement */
+  public double getLatencySeconds() {
+    double lag = getLagLoops();
+    if (Double.isNaN(lag)) {
+      return defaultLatencySeconds;
+    }
+    return (lag + 0.5) * periodSeconds;
+  }
+}
@@ -0,0 +1,294 @@
+package frc.robot.util;
+
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Finds out what is eating the 20ms loop. Times every subsystem periodic(), every command
+ * execute(), the button bindings and the whole scheduler run, and keeps a histogram per item.
+ * Once a second p50/p99/max for the last second are published to /Telemetry/Profiler/&lt;item&gt;
+ * and written to the on-robot log under /profiler/&lt;item&gt;.
+ *
+ * <p>Subsystems time themselves with a {@link Section} around their periodic(). Commands are timed
+ * from the scheduler's execute callback: each command gets the time since the previous callback,
+ * so its number also includes the previous command's isFinished() and end(). Commands with the same
+ * name share a section, and past {@link #maxCommandSections} names the rest are lumped together, so
+ * commands made on the fly don't grow the list forever. Button polling is
+ * timed with bindings added to the button loop before and after RobotContainer binds its triggers.
+ *
+ * <p>Every item also tracks how many bytes the main thread allocated while it ran, using the
+ * JVM's per-thread allocation counter, which is what ends up triggering GC pauses. Loops where the
+ * scheduler ran over budget are logged under /profiler/overrun and GC pauses under /gc (see {@link
+ * GcMonitor}), both on the FPGA clock so they can be lined up.
+ *
+ * <p>Nothing here allocates after an item has been seen once.
+ */
+public final class LoopProfiler {
+  private static final int windowLoops = 50;
+  private static final String[] fields = {
+    "p50 (us)", "p99 (us)", "max (us)", "count", "alloc p50 (B)", "alloc max (B)", "alloc total (B)"
+  };
+  private static final long overrunMicros = (long) (TimedRobot.kDefaultPeriod * 1e6);
+  // Commands with more names than this share one section
+  private static final int maxCommandSections = 64;
+
+  private static final com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private static final boolean allocationSupported =
+      threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled();
+  private static long mainThreadId = Thread.currentThread().getId();
+
+  private static final ArrayList<Section> sections = new ArrayList<>();
+  // Keyed by name, not instance: commands built on the fly (Commands.run(), groups, autos) are new
+  // objects every time they are scheduled
+  private static final HashMap<String, Section> commandSections = new HashMap<>();
+  private static final HashSet<String> usedNames = new HashSet<>();
+
+  private static final Section scheduler = section("CommandScheduler");
+  private static final Section buttons = section("Buttons");
+  private static Section otherCommands = null;
+
+  private static final DoubleLogEntry overrunLog =
+      new DoubleLogEntry(DataLogManager.getLog(), "/profiler/overrun");
+  private static final TelemetryArray gcTelemetry =
+      new TelemetryArray(
+          "Profiler/GC",
+          Telemetry.Level.NORMAL,
+          1,
+          "pauses",
+          "pause total (ms)",
+          "pause max (ms)");
+  private static final double[] gcWindow = new double[3];
+
+  private static long lastCommandMark = 0;
+  private static long lastCommandAllocMark = 0;
+  private static int loopsInWindow = 0;
+
+  private LoopProfiler() {}
+
+  /**
+   * Hooks into the scheduler. Call once in robotInit, before RobotContainer binds any triggers.
+   * Returns a runnable that has to be called right after the triggers are bound.
+   */
+  public static Runnable install() {
+    mainThreadId = Thread.currentThread().getId();
+    GcMonitor.install();
+    CommandScheduler.getInstance().getDefaultButtonLoop().bind(buttons::start);
+    CommandScheduler.getInstance().onCommandExecute(LoopProfiler::commandExecuted);
+    return () ->
+        CommandScheduler.getInstance()
+            .getDefaultButtonLoop()
+            .bind(
+                () -> {
+                  buttons.stop();
+                  lastCommandMark = System.nanoTime();
+                  lastCommandAllocMark = allocatedBytes();
+                });
+  }
+
+  /** Makes a named timer. Names have to be unique, a number is added otherwise. */
+  public static Section section(String name) {
+    String uniqueName = name;
+    for (int i = 2; !usedNames.add(uniqueName); i++) {
+      uniqueName = name + " " + i;
+    }
+    Section section = new Section(uniqueName);
+    sections.add(section);
+    return section;
+  }
+
+  private static void commandExecuted(Command command) {
+    long now = System.nanoTime();
+    long allocated = allocatedBytes();
+    String name = command.getName();
+    Section section = commandSections.get(name);
+    if (section == null) {
+      if (commandSections.size() < maxCommandSections) {
+        section = section(name);
+        commandSections.put(name, section);
+      } else {
+        if (otherCommands == null) {
+          otherCommands = section("Other commands");
+        }
+        section = otherCommands;
+      }
+      // Don't blame the command for the section we just made
+      allocated = allocatedBytes();
+    }
+    section.record(now - lastCommandMark, allocated - lastCommandAllocMark);
+    lastCommandMark = now;
+    lastCommandAllocMark = allocated;
+  }
+
+  /** Total bytes the main thread has allocated so far, or 0 if the JVM can't tell */
+  private static long allocatedBytes() {
+    return allocationSupported ? threads.getThreadAllocatedBytes(mainThreadId) : 0;
+  }
+
+  /** Call right before CommandScheduler.run() */
+  public static void beginLoop() {
+    scheduler.start();
+  }
+
+  /** Call right after CommandScheduler.run() */
+  public static void endLoop() {
+    scheduler.stop();
+    long schedulerMicros = scheduler.lastNanos / 1000;
+    if (schedulerMicros > overrunMicros) {
+      overrunLog.append(schedulerMicros / 1000.0);
+    }
+    loopsInWindow++;
+    if (loopsInWindow < windowLoops) {
+      return;
+    }
+    loopsInWindow = 0;
+    for (int i = 0; i < sections.size(); i++) {
+      sections.get(i).publish();
+    }
+    GcMonitor.drainWindow(gcWindow);
+    for (int i = 0; i < gcWindow.length; i++) {
+      gcTelemetry.set(i, gcWindow[i]);
+    }
+    gcTelemetry.publish();
+  }
+
+  /** Times one piece of the loop. Call start() and stop() around it, from the main thread. */
+  public static class Section {
+    private final Histogram histogram = new Histogram();
+    private final Histogram allocations = new Histogram();
+    private final TelemetryArray telemetry;
+    private final DoubleArrayLogEntry logEntry;
+    private final double[] summary = new double[fields.length];
+    private long startNanos = 0;
+    private long startAllocated = 0;
+    private long lastNanos = 0;
+    private long allocatedTotal = 0;
+
+    private Section(String name) {
+      telemetry = new TelemetryArray("Profiler/" + name, Telemetry.Level.NORMAL, 1, fields);
+      logEntry = new DoubleArrayLogEntry(DataLogManager.getLog(), "/profiler/" + name);
+    }
+
+    public void start() {
+      startAllocated = allocatedBytes();
+      startNanos = System.nanoTime();
+    }
+
+    public void stop() {
+      long nanos = System.nanoTime() - startNanos;
+      record(nanos, allocatedBytes() - startAllocated);
+    }
+
+    private void record(long nanos, long allocatedBytes) {
+      lastNanos = nanos;
+      histogram.record(nanos / 1000);
+      allocations.record(allocatedBytes);
+      allocatedTotal += allocatedBytes;
+    }
+
+    private void publish() {
+      if (histogram.getCount() == 0) {
+        return;
+      }
+      summary[0] = histogram.getPercentile(0.5);
+      summary[1] = histogram.getPercentile(0.99);
+      summary[2] = histogram.getMax();
+      summary[3] = histogram.getCount();
+      summary[4] = allocations.getPercentile(0.5);
+      summary[5] = allocations.getMax();
+      summary[6] = allocatedTotal;
+      histogram.reset();
+      allocations.reset();
+      allocatedTotal = 0;
+      for (int i = 0; i < summary.length; i++) {
+        telemetry.set(i, summary[i]);
+      }
+      telemetry.publish();
+      logEntry.append(summary);
+    }
+  }
+
+  /**
+   * Log-linear histogram, like HdrHistogram: values under 16 get their own bucket and every power
+   * of two above that is split into 16 buckets, so a percentile is off by at most ~6%. Values above
+   * ~1 second all land in the last bucket, the exact max is kept separately.
+   */
+  public static class Histogram {
+    private static final int subBucketBits = 4;
+    private static final int subBucketCount = 1 << subBucketBits;
+    private static final int maxMagnitude = 20;
+    private static final int bucketCount = (maxMagnitude - subBucketBits + 2) * subBucketCount;
+
+    private final long[] counts = new long[bucketCount];
+    private long count = 0;
+    private long max = 0;
+
+    public void record(long value) {
+      if (value < 0) {
+        value = 0;
+      }
+      counts[bucketFor(value)]++;
+      count++;
+      max = Math.max(max, value);
+    }
+
+    private static int bucketFor(long value) {
+      if (value < subBucketCount) {
+        return (int) value;
+      }
+      int magnitude = Math.min(63 - Long.numberOfLeadingZeros(value), maxMagnitude);
+      int shift = magnitude - subBucketBits;
+      int subBucket = (int) Math.min((value >> shift) - subBucketCount, subBucketCount - 1);
+      return (shift + 1) * subBucketCount + subBucket;
+    }
+
+    /** Middle of the range of values that land in the bucket */
+    private static double valueFor(int bucket) {
+      if (bucket < subBucketCount) {
+        return bucket;
+      }
+      int shift = bucket / subBucketCount - 1;
+      long lowest = (long) (subBucketCount + bucket % subBucketCount) << shift;
+      return lowest + ((1L << shift) - 1) / 2.0;
+    }
+
+    /** @param fraction 0.5 for the median, 0.99 for p99... */
+    public double getPercentile(double fraction) {
+      if (count == 0) {
+        return 0;
+      }
+      long target = Math.max(1, (long) Math.ceil(fraction * count));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= target) {
+          return i == counts.length - 1 ? max : Math.min(valueFor(i), max);
+        }
+      }
+      return max;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public void reset() {
+      Arrays.fill(counts, 0);
+      count = 0;
+      max = 0;
+    }
+  }
+}
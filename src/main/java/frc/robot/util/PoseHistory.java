@@ -0,0 +1,193 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import java.lang.invoke.VarHandle;
+import java.util.Optional;
+
+/**
+ * Where the robot was and how fast it was going over the last few seconds, for anything that needs
+ * to line up with a past instant (vision, game piece tracking, logging what happened when we
+ * scored). Swerve records one entry per loop and readers can look up any time in the window from
+ * any thread.
+ *
+ * <p>Entries are {time, x, y, theta, vx, vy, omega}, with field relative velocities, interleaved in
+ * one preallocated array. Lookups binary search the timestamps and interpolate linearly between the
+ * two entries around the time asked for.
+ *
+ * <p>There is one writer and any number of readers, and neither side locks. The writer bumps a
+ * sequence number before and after each write (a seqlock): readers note it before reading, check
+ * it again after, and retry if a write happened in between, so they always see a consistent
+ * snapshot. Writes are a few stores, so a retry is rare and short.
+ */
+public class PoseHistory {
+  public static final int fields = 6;
+
+  private static final int stride = fields + 1;
+  private static final int time = 0;
+
+  private final double[] entries;
+  private final int mask;
+
+  // Odd while the writer is in the middle of a write
+  private volatile long sequence = 0;
+  // Only written by the writer, read by readers inside the seqlock
+  private long count = 0;
+  private long oldest = 0;
+
+  /**
+   * @param historySeconds How much history to keep
+   * @param periodSeconds How often record() will be called
+   */
+  public PoseHistory(double historySeconds, double periodSeconds) {
+    int size = Integer.highestOneBit((int) Math.ceil(historySeconds / periodSeconds) * 2 - 1);
+    entries = new double[size * stride];
+    mask = size - 1;
+  }
+
+  /**
+   * Adds an entry. Writer only. Entries that aren't newer than the last one are ignored.
+   *
+   * @param omega Radians per second
+   */
+  public void record(
+      double timestampSeconds,
+      double x,
+      double y,
+      double theta,
+      double vx,
+      double vy,
+      double omega) {
+    if (count > oldest && timestampSeconds <= entries[slot(count - 1)]) {
+      return;
+    }
+    long s = sequence;
+    sequence = s + 1;
+    // The entry writes below can't be seen before the odd sequence
+    VarHandle.storeStoreFence();
+    int base = slot(count);
+    entries[base] = timestampSeconds;
+    entries[base + 1] = x;
+    entries[base + 2] = y;
+    entries[base + 3] = MathUtil.angleModulus(theta);
+    entries[base + 4] = vx;
+    entries[base + 5] = vy;
+    entries[base + 6] = omega;
+    count++;
+    oldest = Math.max(oldest, count - (mask + 1));
+    sequence = s + 2;
+  }
+
+  /** Forgets everything, e.g. when odometry is reset. Writer only. */
+  public void clear() {
+    long s = sequence;
+    sequence = s + 1;
+    VarHandle.storeStoreFence();
+    oldest = count;
+    sequence = s + 2;
+  }
+
+  /**
+   * The state at a past time. Times outside the history are clamped to the oldest or newest entry.
+   * Safe to call from any thread.
+   *
+   * @param out Receives {x, y, theta (rad), vx, vy, omega}
+   * @return False if there is no history yet
+   */
+  public boolean getAt(double timestampSeconds, double[] out) {
+    while (true) {
+      long s = sequence;
+      if ((s & 1) != 0) {
+        Thread.onSpinWait();
+        continue;
+      }
+      boolean found = read(timestampSeconds, out);
+      // Nothing read above may be moved after the second look at the sequence
+      VarHandle.acquireFence();
+      if (sequence == s) {
+        return found;
+      }
+    }
+  }
+
+  /** {@link #getAt(double, double[])} for the newest entry */
+  public boolean getLatest(double[] out) {
+    return getAt(Double.POSITIVE_INFINITY, out);
+  }
+
+  /** Allocates, use {@link #getAt(double, double[])} where that matters */
+  public Optional<Pose2d> getPoseAt(double timestampSeconds) {
+    double[] state = new double[fields];
+    if (!getAt(timestampSeconds, state)) {
+      return Optional.empty();
+    }
+    return Optional.of(new Pose2d(state[0], state[1], new Rotation2d(state[2])));
+  }
+
+  /** Timestamp of the newest entry, or NaN if there is none. Safe to call from any thread. */
+  public double getNewestTimestamp() {
+    while (true) {
+      long s = sequence;
+      if ((s & 1) != 0) {
+        Thread.onSpinWait();
+        continue;
+      }
+      double newest = count > oldest ? entries[slot(count - 1)] : Double.NaN;
+      VarHandle.acquireFence();
+      if (sequence == s) {
+        return newest;
+      }
+    }
+  }
+
+  private int slot(long index) {
+    return (int) (index & mask) * stride;
+  }
+
+  /**
+   * Does the lookup without checking for writes. A torn read can produce garbage, but every index
+   * stays in bounds and the caller throws the result away.
+   */
+  private boolean read(double timestampSeconds, double[] out) {
+    long first = oldest;
+    long last = count - 1;
+    if (last < first) {
+      return false;
+    }
+    // Newest entry at or before the time
+    long low = first;
+    long high = last;
+    if (entries[slot(low)] > timestampSeconds) {
+      high = low;
+    }
+    while (low < high) {
+      long mid = (low + high + 1) >>> 1;
+      if (entries[slot(mid)] <= timestampSeconds) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    int base = slot(low);
+    for (int i = 0; i < fields; i++) {
+      out[i] = entries[base + 1 + i];
+    }
+    if (low >= last) {
+      return true;
+    }
+    int next = slot(low + 1);
+    double start = entries[base + time];
+    double end = entries[next + time];
+    double fraction = MathUtil.clamp((timestampSeconds - start) / (end - start), 0, 1);
+    for (int i = 0; i < fields; i++) {
+      double to = entries[next + 1 + i];
+      if (i == 2) {
+        out[i] = MathUtil.angleModulus(out[i] + MathUtil.angleModulus(to - out[i]) * fraction);
+      } else {
+        out[i] += (to - out[i]) * fraction;
+      }
+    }
+    return true;
+  }
+}
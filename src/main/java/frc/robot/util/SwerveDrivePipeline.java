@@ -0,0 +1,198 @@
+package frc.robot.util;
+
+import frc.lib.math.FourModuleSwerveKinematics;
+import frc.lib.math.SecondOrderSwerveKinematics;
+
+/**
+ * The part of Swerve.drive() that doesn't need the hardware: from the requested chassis speeds to
+ * each module's speed, angle, acceleration and turning rate. Swerve passes in what it read from the
+ * gyro and odometry and sends the results to the modules, and DriveAllocationTest runs it on its
+ * own.
+ *
+ * <p>Nothing allocates after construction. Main thread only.
+ */
+public class SwerveDrivePipeline {
+  private final FourModuleSwerveKinematics kinematics;
+  private final SecondOrderSwerveKinematics secondOrderKinematics;
+  private final SwerveSetpointGenerator setpointGenerator;
+  private final double maxSpeed;
+  private final double maxAngularVelocity;
+
+  private final double[] correctedSpeeds = new double[3];
+  private final double[] moduleSpeeds = new double[4];
+  private final double[] moduleAngles = new double[4];
+  private final double[] moduleAccelerations = new double[4];
+  private final double[] moduleAngleVelocities = new double[4];
+  // Last setpoint, field relative, to difference for the acceleration
+  private double lastSetpointFieldVx = 0;
+  private double lastSetpointFieldVy = 0;
+  private double lastSetpointOmega = 0;
+
+  public SwerveDrivePipeline(
+      FourModuleSwerveKinematics kinematics,
+      SecondOrderSwerveKinematics secondOrderKinematics,
+      SwerveSetpointGenerator setpointGenerator,
+      double maxSpeed,
+      double maxAngularVelocity) {
+    this.kinematics = kinematics;
+    this.secondOrderKinematics = secondOrderKinematics;
+    this.setpointGenerator = setpointGenerator;
+    this.maxSpeed = maxSpeed;
+    this.maxAngularVelocity = maxAngularVelocity;
+  }
+
+  /**
+   * Starts over from what the robot is doing now, e.g. after it wasn't driven for a while.
+   *
+   * @param vx Measured, robot relative
+   * @param fieldVx Measured, field relative
+   * @param moduleSpeeds Measured, in meters per second
+   * @param moduleAnglesRadians Measured
+   */
+  public void reset(
+      double vx,
+      double vy,
+      double omega,
+      double fieldVx,
+      double fieldVy,
+      double[] moduleSpeeds,
+      double[] moduleAnglesRadians) {
+    setpointGenerator.reset(vx, vy, omega, moduleSpeeds, moduleAnglesRadians);
+    lastSetpointFieldVx = fieldVx;
+    lastSetpointFieldVy = fieldVy;
+    lastSetpointOmega = omega;
+  }
+
+  /**
+   * Discretizes the chassis speeds over one loop so that translating while rotating doesn't skew.
+   * Writes {vx, vy, omega} into out.
+   */
+  private static void correctForDynamics(
+      double vx, double vy, double omega, double loopTime, double[] out) {
+    GeometryUtils.log(vx * loopTime, vy * loopTime, omega * loopTime, out);
+    out[0] /= loopTime;
+    out[1] /= loopTime;
+    out[2] /= loopTime;
+  }
+
+  /**
+   * Works out this loop's module setpoints, read them back with the getters.
+   *
+   * @param xAcceleration Where the speeds are going, in the same frame as them. Fed forward to the
+   *     modules, along with how fast that turns them. All zero to use how the setpoint changed,
+   *     which is also used when the setpoint generator cuts the step short.
+   * @param angularAcceleration Radians per second squared
+   * @param predictedHeadingRadians Heading the robot will have when the modules act on this, for
+   *     turning field relative speeds into robot relative ones
+   * @param headingRadians Estimated heading now
+   * @param centerOfMassHeight Meters above the floor, for the tipping limit
+   * @param loopTime Seconds since the last call
+   */
+  public void calculate(
+      double xSpeed,
+      double ySpeed,
+      double rotation,
+      double xAcceleration,
+      double yAcceleration,
+      double angularAcceleration,
+      boolean fieldRelative,
+      double predictedHeadingRadians,
+      double headingRadians,
+      double centerOfMassHeight,
+      double loopTime) {
+    correctForDynamics(xSpeed, ySpeed, rotation, loopTime, correctedSpeeds); // jimmy p omegabytes
+    double vx = correctedSpeeds[0];
+    double vy = correctedSpeeds[1];
+    double omega = correctedSpeeds[2];
+    double ax = xAcceleration;
+    double ay = yAcceleration;
+    if (fieldRelative) {
+      // Same as ChassisSpeeds.fromFieldRelativeSpeeds, but with the heading the robot will have by
+      // the time the modules act on this, so strafing while spinning doesn't curve
+      double cos = Math.cos(predictedHeadingRadians);
+      double sin = Math.sin(predictedHeadingRadians);
+      double robotVx = vx * cos + vy * sin;
+      double robotVy = -vx * sin + vy * cos;
+      vx = robotVx;
+      vy = robotVy;
+      double robotAx = ax * cos + ay * sin;
+      double robotAy = -ax * sin + ay * cos;
+      ax = robotAx;
+      ay = robotAy;
+    }
+
+    // Normalizes wheel speeds by the max (wheel) speed.
+    double scale =
+        kinematics.desaturationScale(vx, vy, omega, maxSpeed, maxSpeed, maxAngularVelocity);
+
+    // Only go as far towards that as the wheels and the center of mass allow this loop. Keeps the
+    // module angles when told to stop, like swerveKinematics.toSwerveModuleStates.
+    setpointGenerator.generate(
+        vx * scale,
+        vy * scale,
+        omega * scale,
+        centerOfMassHeight,
+        loopTime,
+        moduleSpeeds,
+        moduleAngles);
+
+    // Without a path to say where we're going, the setpoint's own change this loop is the
+    // acceleration. The same goes when the generator held the setpoint back, since the robot won't
+    // accelerate the way the path wanted. Differenced in field coordinates, since the robot's
+    // frame turns under it.
+    double cos = Math.cos(headingRadians);
+    double sin = Math.sin(headingRadians);
+    double setpointVx = setpointGenerator.getVx();
+    double setpointVy = setpointGenerator.getVy();
+    double setpointOmega = setpointGenerator.getOmega();
+    double fieldVx = setpointVx * cos - setpointVy * sin;
+    double fieldVy = setpointVx * sin + setpointVy * cos;
+    if (setpointGenerator.wasLimited() || (ax == 0 && ay == 0 && angularAcceleration == 0)) {
+      double fieldAx = (fieldVx - lastSetpointFieldVx) / loopTime;
+      double fieldAy = (fieldVy - lastSetpointFieldVy) / loopTime;
+      ax = fieldAx * cos + fieldAy * sin;
+      ay = -fieldAx * sin + fieldAy * cos;
+      angularAcceleration = (setpointOmega - lastSetpointOmega) / loopTime;
+    }
+    lastSetpointFieldVx = fieldVx;
+    lastSetpointFieldVy = fieldVy;
+    lastSetpointOmega = setpointOmega;
+
+    secondOrderKinematics.toModuleFeedforward(
+        setpointVx,
+        setpointVy,
+        setpointOmega,
+        ax,
+        ay,
+        angularAcceleration,
+        moduleSpeeds,
+        moduleAngles,
+        moduleAccelerations,
+        moduleAngleVelocities);
+  }
+
+  /** Robot relative, of the last setpoint */
+  public double getSetpointOmega() {
+    return setpointGenerator.getOmega();
+  }
+
+  /** Meters per second, indexed by module number. Don't modify. */
+  public double[] getModuleSpeeds() {
+    return moduleSpeeds;
+  }
+
+  /** Degrees */
+  public double[] getModuleAngles() {
+    return moduleAngles;
+  }
+
+  /** Meters per second squared */
+  public double[] getModuleAccelerations() {
+    return moduleAccelerations;
+  }
+
+  /** Degrees per second */
+  public double[] getModuleAngleVelocities() {
+    return moduleAngleVelocities;
+  }
+}
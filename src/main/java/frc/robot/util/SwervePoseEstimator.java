@@ -0,0 +1,481 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import java.util.Optional;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Drop-in replacement for WPILib's SwerveDrivePoseEstimator that keeps its history in primitive
+ * ring buffers instead of a TreeMap of objects, so neither odometry updates nor vision
+ * measurements create garbage.
+ *
+ * <p>It does the same math as the WPILib one: odometry integrates the module deltas with the gyro
+ * for heading, and a vision measurement moves the pose at its timestamp part of the way towards the
+ * measurement (per-axis gain q/(q + sqrt(q*r))), after which every later pose is recomputed. Two
+ * things make it cheap:
+ *
+ * <ul>
+ *   <li>Samples come from the odometry thread at a fixed rate, so the sample at a timestamp is
+ *       found by index arithmetic plus a step or two to make up for jitter, instead of a tree
+ *       search.
+ *   <li>The odometry twists between samples don't depend on where the chain starts, so replaying
+ *       them from a corrected pose is the same as moving every later pose by one rigid transform.
+ *       That is a few multiplies per sample, no trig.
+ * </ul>
+ *
+ * <p>One difference: WPILib replays a measurement by re-integrating the odometry inputs, which
+ * throws away any correction from a measurement with a later timestamp that came in earlier. Here
+ * later samples are moved instead, so out of order measurements (e.g. from two cameras) all count.
+ * For measurements that come in order the two give the same result.
+ *
+ * <p>Not thread safe, only use it from one thread.
+ */
+public class SwervePoseEstimator {
+  private static final double historySeconds = 1.5;
+
+  private final int moduleCount;
+  // 3 x (2 * moduleCount), row major, pseudo-inverse of the inverse kinematics like WPILib uses
+  private final double[] forwardKinematics;
+  private final double samplePeriod;
+
+  // Variances of the odometry and of vision, and the gain that follows from them
+  private final double[] q = {0.1 * 0.1, 0.1 * 0.1, 0.1 * 0.1};
+  private final double[] r = {0.9 * 0.9, 0.9 * 0.9, 0.9 * 0.9};
+  private final double[] visionK = new double[3];
+
+  // Ring buffer of samples. Poses are field relative, twists are robot relative and go from the
+  // previous sample to this one. Heading is kept unwrapped.
+  private final int capacity;
+  private final int mask;
+  private final double[] times;
+  private final double[] xs;
+  private final double[] ys;
+  private final double[] thetas;
+  private final double[] twistXs;
+  private final double[] twistYs;
+  private final double[] twistThetas;
+  private long count = 0;
+  private long oldest = 0;
+
+  // Current pose, the newest sample if there is one
+  private double x;
+  private double y;
+  private double theta;
+
+  // Odometry inputs from the last update
+  private double previousGyro;
+  private final double[] previousDistances;
+
+  // Scratch space
+  private final double[] twist = new double[3];
+  private final double[] transform = new double[3];
+  private final double[] sample = new double[3];
+
+  /**
+   * @param moduleLocations Module positions relative to the robot center, in the same order as the
+   *     distances and angles passed in later
+   * @param samplePeriodSeconds How often updateWithTime() is called. Only used to find samples
+   *     quickly, it's fine if the real period jitters.
+   */
+  public SwervePoseEstimator(
+      Translation2d[] moduleLocations,
+      double samplePeriodSeconds,
+      double gyroRadians,
+      double[] distances,
+      double[] anglesRadians,
+      Pose2d initialPose) {
+    moduleCount = moduleLocations.length;
+    samplePeriod = samplePeriodSeconds;
+
+    SimpleMatrix inverseKinematics = new SimpleMatrix(moduleCount * 2, 3);
+    for (int i = 0; i < moduleCount; i++) {
+      inverseKinematics.setRow(i * 2, 0, 1, 0, -moduleLocations[i].getY());
+      inverseKinematics.setRow(i * 2 + 1, 0, 0, 1, moduleLocations[i].getX());
+    }
+    SimpleMatrix pseudoInverse = inverseKinematics.pseudoInverse();
+    forwardKinematics = new double[3 * moduleCount * 2];
+    for (int row = 0; row < 3; row++) {
+      for (int col = 0; col < moduleCount * 2; col++) {
+        forwardKinematics[row * moduleCount * 2 + col] = pseudoInverse.get(row, col);
+      }
+    }
+
+    // Twice the history we need, so that a faster than expected sample rate still fits
+    capacity = Integer.highestOneBit((int) Math.ceil(2 * historySeconds / samplePeriod) * 2 - 1);
+    mask = capacity - 1;
+    times = new double[capacity];
+    xs = new double[capacity];
+    ys = new double[capacity];
+    thetas = new double[capacity];
+    twistXs = new double[capacity];
+    twistYs = new double[capacity];
+    twistThetas = new double[capacity];
+
+    previousDistances = new double[moduleCount];
+    updateGain();
+    resetPosition(gyroRadians, distances, anglesRadians, initialPose);
+  }
+
+  /** How much the odometry is trusted, in meters and radians. Higher means trust it less. */
+  public void setStateStdDevs(double x, double y, double theta) {
+    q[0] = x * x;
+    q[1] = y * y;
+    q[2] = theta * theta;
+    updateGain();
+  }
+
+  /** How much vision is trusted, in meters and radians. Higher means trust it less. */
+  public void setVisionMeasurementStdDevs(double x, double y, double theta) {
+    r[0] = x * x;
+    r[1] = y * y;
+    r[2] = theta * theta;
+    updateGain();
+  }
+
+  private void updateGain() {
+    for (int i = 0; i < 3; i++) {
+      visionK[i] = gain(q[i], r[i]);
+    }
+  }
+
+  private static double gain(double q, double r) {
+    return q == 0 ? 0 : q / (q + Math.sqrt(q * r));
+  }
+
+  /** Moves the estimate to pose and forgets the history */
+  public void resetPosition(
+      double gyroRadians, double[] distances, double[] anglesRadians, Pose2d pose) {
+    x = pose.getX();
+    y = pose.getY();
+    theta = pose.getRotation().getRadians();
+    previousGyro = gyroRadians;
+    System.arraycopy(distances, 0, previousDistances, 0, moduleCount);
+    oldest = count;
+  }
+
+  /**
+   * Integrates one odometry sample. Timestamps have to increase.
+   *
+   * @param distances Module drive distances in meters
+   * @param anglesRadians Module angles
+   */
+  public void updateWithTime(
+      double timestampSeconds, double gyroRadians, double[] distances, double[] anglesRadians) {
+    // Robot relative twist from the module deltas, like SwerveDriveKinematics.toTwist2d(). The
+    // delta uses the module's current angle, same as WPILib.
+    int columns = moduleCount * 2;
+    double dx = 0;
+    double dy = 0;
+    for (int i = 0; i < moduleCount; i++) {
+      double delta = distances[i] - previousDistances[i];
+      double deltaX = delta * Math.cos(anglesRadians[i]);
+      double deltaY = delta * Math.sin(anglesRadians[i]);
+      dx += forwardKinematics[i * 2] * deltaX + forwardKinematics[i * 2 + 1] * deltaY;
+      dy += forwardKinematics[columns + i * 2] * deltaX
+          + forwardKinematics[columns + i * 2 + 1] * deltaY;
+      previousDistances[i] = distances[i];
+    }
+    // Heading comes from the gyro, not the wheels
+    double dtheta = MathUtil.angleModulus(gyroRadians - previousGyro);
+    previousGyro = gyroRadians;
+
+    GeometryUtils.exp(dx, dy, dtheta, transform);
+    double cos = Math.cos(theta);
+    double sin = Math.sin(theta);
+    x += transform[0] * cos - transform[1] * sin;
+    y += transform[0] * sin + transform[1] * cos;
+    theta += dtheta;
+
+    int slot = (int) (count & mask);
+    times[slot] = timestampSeconds;
+    xs[slot] = x;
+    ys[slot] = y;
+    thetas[slot] = theta;
+    twistXs[slot] = dx;
+    twistYs[slot] = dy;
+    twistThetas[slot] = dtheta;
+    count++;
+    oldest = Math.max(oldest, count - capacity);
+  }
+
+  /**
+   * Corrects the estimate with a vision measurement taken at timestampSeconds. Measurements older
+   * than the history (1.5s) are ignored.
+   */
+  public void addVisionMeasurement(
+      double visionX, double visionY, double visionTheta, double timestampSeconds) {
+    correct(
+        visionX, visionY, visionTheta, timestampSeconds, visionK[0], visionK[1], visionK[2]);
+  }
+
+  /**
+   * Same as {@link #addVisionMeasurement(double, double, double, double)}, with standard
+   * deviations (meters and radians) for just this measurement. Infinity means ignore that axis.
+   */
+  public void addVisionMeasurement(
+      double visionX,
+      double visionY,
+      double visionTheta,
+      double timestampSeconds,
+      double stdDevX,
+      double stdDevY,
+      double stdDevTheta) {
+    correct(
+        visionX,
+        visionY,
+        visionTheta,
+        timestampSeconds,
+        gain(q[0], stdDevX * stdDevX),
+        gain(q[1], stdDevY * stdDevY),
+        gain(q[2], stdDevTheta * stdDevTheta));
+  }
+
+  /**
+   * Squared Mahalanobis distance between a vision measurement and the estimated pose at its
+   * timestamp, using the odometry and measurement variances. Big values mean the two disagree
+   * more than their uncertainty explains. 0 if there is no history to compare with.
+   */
+  public double getMahalanobisSquared(
+      double visionX,
+      double visionY,
+      double visionTheta,
+      double timestampSeconds,
+      double stdDevX,
+      double stdDevY,
+      double stdDevTheta) {
+    if (count == oldest) {
+      return 0;
+    }
+    long index = indexAt(timestampSeconds);
+    interpolate(index, fractionAfter(index, timestampSeconds), sample);
+    double dx = visionX - sample[0];
+    double dy = visionY - sample[1];
+    double dtheta = MathUtil.angleModulus(visionTheta - sample[2]);
+    return dx * dx / (q[0] + stdDevX * stdDevX)
+        + dy * dy / (q[1] + stdDevY * stdDevY)
+        + dtheta * dtheta / (q[2] + stdDevTheta * stdDevTheta);
+  }
+
+  private void correct(
+      double visionX,
+      double visionY,
+      double visionTheta,
+      double timestampSeconds,
+      double kX,
+      double kY,
+      double kTheta) {
+    if (count == oldest || times[(int) ((count - 1) & mask)] - historySeconds > timestampSeconds) {
+      return;
+    }
+    long index = indexAt(timestampSeconds);
+    double fraction = fractionAfter(index, timestampSeconds);
+    interpolate(index, fraction, sample);
+    double sampleX = sample[0];
+    double sampleY = sample[1];
+    double sampleTheta = sample[2];
+
+    // Twist from the sampled pose to the measurement, scaled by the gain
+    double cos = Math.cos(sampleTheta);
+    double sin = Math.sin(sampleTheta);
+    double fieldDx = visionX - sampleX;
+    double fieldDy = visionY - sampleY;
+    log(
+        fieldDx * cos + fieldDy * sin,
+        -fieldDx * sin + fieldDy * cos,
+        MathUtil.angleModulus(visionTheta - sampleTheta));
+    GeometryUtils.exp(twist[0] * kX, twist[1] * kY, twist[2] * kTheta, transform);
+    double correctedX = sampleX + transform[0] * cos - transform[1] * sin;
+    double correctedY = sampleY + transform[0] * sin + transform[1] * cos;
+    double correctedTheta = sampleTheta + transform[2];
+
+    // Keep the corrected pose in the history, like WPILib does, so that later measurements
+    // interpolate against it. Right on a sample, that sample is replaced.
+    long corrected = index;
+    if (fraction > 0) {
+      corrected = insertAfter(index, timestampSeconds, fraction);
+    }
+
+    // Replaying the odometry from the corrected pose moves every later sample by the same rigid
+    // transform
+    double rotation = correctedTheta - sampleTheta;
+    double rotationCos = Math.cos(rotation);
+    double rotationSin = Math.sin(rotation);
+    for (long i = corrected; i < count; i++) {
+      int s = (int) (i & mask);
+      double relX = xs[s] - sampleX;
+      double relY = ys[s] - sampleY;
+      xs[s] = correctedX + relX * rotationCos - relY * rotationSin;
+      ys[s] = correctedY + relX * rotationSin + relY * rotationCos;
+      thetas[s] += rotation;
+    }
+    int newest = (int) ((count - 1) & mask);
+    x = xs[newest];
+    y = ys[newest];
+    theta = thetas[newest];
+  }
+
+  public void addVisionMeasurement(Pose2d visionPose, double timestampSeconds) {
+    addVisionMeasurement(
+        visionPose.getX(),
+        visionPose.getY(),
+        visionPose.getRotation().getRadians(),
+        timestampSeconds);
+  }
+
+  /**
+   * Makes room for a sample between index and index + 1, at the interpolated pose (which is in
+   * {@link #sample}). The odometry twist to the next sample is split between the two.
+   *
+   * @return Index of the new sample
+   */
+  private long insertAfter(long index, double timestampSeconds, double fraction) {
+    for (long i = count - 1; i > index; i--) {
+      int from = (int) (i & mask);
+      int to = (int) ((i + 1) & mask);
+      times[to] = times[from];
+      xs[to] = xs[from];
+      ys[to] = ys[from];
+      thetas[to] = thetas[from];
+      twistXs[to] = twistXs[from];
+      twistYs[to] = twistYs[from];
+      twistThetas[to] = twistThetas[from];
+    }
+    count++;
+    oldest = Math.max(oldest, count - capacity);
+
+    int slot = (int) ((index + 1) & mask);
+    int next = (int) ((index + 2) & mask);
+    times[slot] = timestampSeconds;
+    xs[slot] = sample[0];
+    ys[slot] = sample[1];
+    thetas[slot] = sample[2];
+    twistXs[slot] = twistXs[next] * fraction;
+    twistYs[slot] = twistYs[next] * fraction;
+    twistThetas[slot] = twistThetas[next] * fraction;
+    twistXs[next] -= twistXs[slot];
+    twistYs[next] -= twistYs[slot];
+    twistThetas[next] -= twistThetas[slot];
+    return index + 1;
+  }
+
+  /**
+   * Index of the newest sample at or before timestampSeconds, or of the oldest sample if they are
+   * all newer. There has to be at least one sample.
+   */
+  private long indexAt(double timestampSeconds) {
+    long newest = count - 1;
+    double age = times[(int) (newest & mask)] - timestampSeconds;
+    long index = newest - (long) Math.max(0, Math.min(age / samplePeriod, newest - oldest));
+    while (index > oldest && times[(int) (index & mask)] > timestampSeconds) {
+      index--;
+    }
+    while (index < newest && times[(int) ((index + 1) & mask)] <= timestampSeconds) {
+      index++;
+    }
+    return index;
+  }
+
+  /** How far timestampSeconds is between the sample at index and the next one, 0 to 1 */
+  private double fractionAfter(long index, double timestampSeconds) {
+    if (index >= count - 1) {
+      return 0;
+    }
+    double start = times[(int) (index & mask)];
+    double end = times[(int) ((index + 1) & mask)];
+    return MathUtil.clamp((timestampSeconds - start) / (end - start), 0, 1);
+  }
+
+  /**
+   * Pose fraction of the way from the sample at index to the next one, along the twist between
+   * them (Pose2d.interpolate()). Writes {x, y, theta} into out.
+   */
+  private void interpolate(long index, double fraction, double[] out) {
+    int slot = (int) (index & mask);
+    out[0] = xs[slot];
+    out[1] = ys[slot];
+    out[2] = thetas[slot];
+    if (fraction <= 0) {
+      return;
+    }
+    int next = (int) ((index + 1) & mask);
+    double cos = Math.cos(out[2]);
+    double sin = Math.sin(out[2]);
+    double fieldDx = xs[next] - out[0];
+    double fieldDy = ys[next] - out[1];
+    log(
+        fieldDx * cos + fieldDy * sin,
+        -fieldDx * sin + fieldDy * cos,
+        MathUtil.angleModulus(thetas[next] - out[2]));
+    GeometryUtils.exp(twist[0] * fraction, twist[1] * fraction, twist[2] * fraction, transform);
+    out[0] += transform[0] * cos - transform[1] * sin;
+    out[1] += transform[0] * sin + transform[1] * cos;
+    out[2] += twist[2] * fraction;
+  }
+
+  /**
+   * Pose2d.log() of the transform {x, y, theta} into {@link #twist}. GeometryUtils.log() follows
+   * the 254 code, which leaves out the scale WPILib puts on the translation, so corrections would
+   * come up a little short of WPILib's.
+   */
+  private void log(double x, double y, double theta) {
+    GeometryUtils.log(x, y, theta, twist);
+    double halfTheta = 0.5 * theta;
+    double cosMinusOne = Math.cos(theta) - 1;
+    double halfThetaByTanOfHalfTheta =
+        Math.abs(cosMinusOne) < 1e-9
+            ? 1 - theta * theta / 12
+            : -(halfTheta * Math.sin(theta)) / cosMinusOne;
+    double scale = Math.hypot(halfThetaByTanOfHalfTheta, halfTheta);
+    twist[0] *= scale;
+    twist[1] *= scale;
+  }
+
+  /**
+   * The estimated pose at a past time, as it is estimated now (so including vision measurements
+   * that came in later). Times before the history or after the newest sample are clamped.
+   *
+   * @param out Receives {x, y, theta in radians}
+   * @return False if there is no history to look in
+   */
+  public boolean getPoseAt(double timestampSeconds, double[] out) {
+    if (count == oldest) {
+      return false;
+    }
+    long index = indexAt(timestampSeconds);
+    interpolate(index, fractionAfter(index, timestampSeconds), out);
+    out[2] = MathUtil.angleModulus(out[2]);
+    return true;
+  }
+
+  public Optional<Pose2d> getPoseAt(double timestampSeconds) {
+    double[] pose = new double[3];
+    if (!getPoseAt(timestampSeconds, pose)) {
+      return Optional.empty();
+    }
+    return Optional.of(new Pose2d(pose[0], pose[1], new Rotation2d(pose[2])));
+  }
+
+  /** Time of the newest odometry sample, what getEstimatedPosition() is for */
+  public double getLatestTimestamp() {
+    return times[(int) ((count - 1) & mask)];
+  }
+
+  public double getX() {
+    return x;
+  }
+
+  public double getY() {
+    return y;
+  }
+
+  public double getRotationRadians() {
+    return MathUtil.angleModulus(theta);
+  }
+
+  public Pose2d getEstimatedPosition() {
+    return new Pose2d(x, y, new Rotation2d(theta));
+  }
+}
@@ -0,0 +1,246 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Turns the chassis speeds the driver or a path asks for into module setpoints the robot can
+ * actually follow from where it is now. Each loop the setpoint moves from the last one towards the
+ * requested speeds, but only as far as every limit allows:
+ *
+ * <ul>
+ *   <li>No module's drive speed changes faster than the drive acceleration limit, so wheels don't
+ *       slip and a reversal slows down through zero instead of being commanded instantly.
+ *   <li>No moving module has to turn faster than the azimuth limit. Modules that are (close to)
+ *       stopped can point anywhere, and a module that would have to turn more than 90 degrees is
+ *       flipped instead, like CTREModuleState.optimize does.
+ *   <li>The chassis doesn't accelerate harder than it can without tipping. That is g times the
+ *       distance from the center of mass to the edge of the wheelbase in the direction of
+ *       acceleration, over the height of the center of mass, which goes up with the elevator. The
+ *       acceleration is the inertial one, dv/dt + omega x v: robot relative speeds also change when
+ *       the robot just turns while keeping its field velocity, and that doesn't tip anything. If
+ *       the robot is already over the limit from turning alone, it may move to anything that isn't
+ *       worse.
+ * </ul>
+ *
+ * <p>The setpoint moves along the straight line from the previous chassis speeds to the requested
+ * ones. The furthest point under the tipping limit and then the furthest one that satisfies every
+ * module are found by bisection. That is simpler than solving each module's limits exactly and the
+ * error is well under a percent of one loop's change.
+ *
+ * <p>Nothing allocates after construction. Main thread only.
+ */
+public class SwerveSetpointGenerator {
+  private static final double gravity = 9.81;
+  private static final int bisectionSteps = 10;
+  // The tipping check is a few multiplies, so it can afford to get much closer to the limit
+  private static final int tippingBisectionSteps = 30;
+  // Modules going slower than this can point anywhere
+  private static final double stoppedSpeed = 1e-3;
+
+  private final Translation2d[] moduleLocations;
+  private final double halfWheelBase;
+  private final double halfTrackWidth;
+  private final double maxDriveAcceleration;
+  private final double maxAzimuthVelocity;
+
+  // Last setpoint, robot relative
+  private double vx = 0;
+  private double vy = 0;
+  private double omega = 0;
+  private final double[] speeds;
+  private final double[] angles;
+  // Whether the last call stopped short of the requested speeds
+  private boolean limited = false;
+
+  // Scratch for the candidate being checked
+  private final double[] candidateSpeeds;
+  private final double[] candidateAngles;
+  // Tipping limits for this call, per axis of the chassis, and how much of them may be used
+  private double maxTippingAx;
+  private double maxTippingAy;
+  private double allowedTipping;
+
+  /**
+   * @param maxDriveAcceleration Meters per second squared, per module
+   * @param maxAzimuthVelocity Radians per second, per module
+   */
+  public SwerveSetpointGenerator(
+      Translation2d[] moduleLocations, double maxDriveAcceleration, double maxAzimuthVelocity) {
+    this.moduleLocations = moduleLocations;
+    this.maxDriveAcceleration = maxDriveAcceleration;
+    this.maxAzimuthVelocity = maxAzimuthVelocity;
+    double maxX = 0;
+    double maxY = 0;
+    for (Translation2d location : moduleLocations) {
+      maxX = Math.max(maxX, Math.abs(location.getX()));
+      maxY = Math.max(maxY, Math.abs(location.getY()));
+    }
+    halfWheelBase = maxX;
+    halfTrackWidth = maxY;
+    speeds = new double[moduleLocations.length];
+    angles = new double[moduleLocations.length];
+    candidateSpeeds = new double[moduleLocations.length];
+    candidateAngles = new double[moduleLocations.length];
+  }
+
+  /**
+   * Starts over from what the robot is doing now, e.g. after it wasn't driven for a while.
+   *
+   * @param moduleSpeeds Measured, in meters per second
+   * @param moduleAnglesRadians Measured
+   */
+  public void reset(
+      double vx,
+      double vy,
+      double omega,
+      double[] moduleSpeeds,
+      double[] moduleAnglesRadians) {
+    this.vx = vx;
+    this.vy = vy;
+    this.omega = omega;
+    System.arraycopy(moduleSpeeds, 0, speeds, 0, speeds.length);
+    System.arraycopy(moduleAnglesRadians, 0, angles, 0, angles.length);
+  }
+
+  /** Robot relative, of the last setpoint */
+  public double getVx() {
+    return vx;
+  }
+
+  public double getVy() {
+    return vy;
+  }
+
+  public double getOmega() {
+    return omega;
+  }
+
+  /** Whether the last {@link #generate} had to stop short of the requested speeds */
+  public boolean wasLimited() {
+    return limited;
+  }
+
+  /**
+   * Moves the setpoint towards the requested robot relative speeds. The requested speeds should
+   * already be desaturated.
+   *
+   * @param centerOfMassHeight Meters above the floor, for the tipping limit
+   * @param dt Seconds since the last call
+   * @param speedsOut Receives the module speeds in meters per second
+   * @param anglesOut Receives the module angles in degrees
+   */
+  public void generate(
+      double desiredVx,
+      double desiredVy,
+      double desiredOmega,
+      double centerOfMassHeight,
+      double dt,
+      double[] speedsOut,
+      double[] anglesOut) {
+    double dvx = desiredVx - vx;
+    double dvy = desiredVy - vy;
+    double dOmega = desiredOmega - omega;
+
+    // Tipping limit on the chassis acceleration, for a rectangular wheelbase. Tipping over an edge
+    // only depends on the acceleration across it, so each axis can be checked on its own.
+    maxTippingAx = gravity * halfWheelBase / centerOfMassHeight;
+    maxTippingAy = gravity * halfTrackWidth / centerOfMassHeight;
+    allowedTipping = Math.max(1, tipping(0, dvx, dvy, dOmega, dt));
+    double maxFraction = 1;
+    if (tipping(1, dvx, dvy, dOmega, dt) > allowedTipping) {
+      double low = 0;
+      double high = 1;
+      for (int i = 0; i < tippingBisectionSteps; i++) {
+        double mid = (low + high) / 2;
+        if (tipping(mid, dvx, dvy, dOmega, dt) <= allowedTipping) {
+          low = mid;
+        } else {
+          high = mid;
+        }
+      }
+      maxFraction = low;
+    }
+
+    double fraction = maxFraction;
+    if (!isFeasible(maxFraction, dvx, dvy, dOmega, dt)) {
+      double low = 0;
+      double high = maxFraction;
+      for (int i = 0; i < bisectionSteps; i++) {
+        double mid = (low + high) / 2;
+        if (isFeasible(mid, dvx, dvy, dOmega, dt)) {
+          low = mid;
+        } else {
+          high = mid;
+        }
+      }
+      fraction = low;
+      // Leaves the candidate arrays holding the chosen fraction
+      isFeasible(fraction, dvx, dvy, dOmega, dt);
+    }
+
+    limited = fraction < 1;
+    vx += dvx * fraction;
+    vy += dvy * fraction;
+    omega += dOmega * fraction;
+    for (int i = 0; i < speeds.length; i++) {
+      speeds[i] = candidateSpeeds[i];
+      angles[i] = candidateAngles[i];
+      speedsOut[i] = speeds[i];
+      anglesOut[i] = Math.toDegrees(angles[i]);
+    }
+  }
+
+  /**
+   * How close going fraction of the way to the requested speeds comes to tipping, 1 being the
+   * limit. The inertial acceleration is dv/dt + omega x v, with omega and v halfway through the
+   * step, which cancels out a pure rotation of v to third order.
+   */
+  private double tipping(double fraction, double dvx, double dvy, double dOmega, double dt) {
+    double midVx = vx + dvx * fraction / 2;
+    double midVy = vy + dvy * fraction / 2;
+    double midOmega = omega + dOmega * fraction / 2;
+    double ax = dvx * fraction / dt - midOmega * midVy;
+    double ay = dvy * fraction / dt + midOmega * midVx;
+    return Math.max(Math.abs(ax) / maxTippingAx, Math.abs(ay) / maxTippingAy);
+  }
+
+  /**
+   * Fills the candidate arrays with the module states fraction of the way to the requested speeds
+   * and checks them against the module limits.
+   */
+  private boolean isFeasible(double fraction, double dvx, double dvy, double dOmega, double dt) {
+    double candidateVx = vx + dvx * fraction;
+    double candidateVy = vy + dvy * fraction;
+    double candidateOmega = omega + dOmega * fraction;
+    double maxSpeedChange = maxDriveAcceleration * dt;
+    double maxAngleChange = maxAzimuthVelocity * dt;
+    boolean feasible = true;
+    for (int i = 0; i < speeds.length; i++) {
+      Translation2d location = moduleLocations[i];
+      double moduleVx = candidateVx - candidateOmega * location.getY();
+      double moduleVy = candidateVy + candidateOmega * location.getX();
+      double speed = Math.hypot(moduleVx, moduleVy);
+      double angle = speed > stoppedSpeed ? Math.atan2(moduleVy, moduleVx) : angles[i];
+
+      // Drive backwards rather than turn more than 90 degrees. Speeds are signed, so a reversal
+      // shows up as the speed going through zero and is limited by the drive acceleration.
+      double turn = MathUtil.angleModulus(angle - angles[i]);
+      if (Math.abs(turn) > Math.PI / 2) {
+        speed = -speed;
+        angle = MathUtil.angleModulus(angle + Math.PI);
+        turn = MathUtil.angleModulus(angle - angles[i]);
+      }
+      candidateSpeeds[i] = speed;
+      candidateAngles[i] = angle;
+
+      if (Math.abs(speed - speeds[i]) > maxSpeedChange + 1e-9) {
+        feasible = false;
+      }
+      if (Math.abs(speeds[i]) > stoppedSpeed && Math.abs(turn) > maxAngleChange + 1e-9) {
+        feasible = false;
+      }
+    }
+    return feasible;
+  }
+}
@@ -0,0 +1,97 @@
+package frc.robot.util;
+
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Decides which telemetry gets published. Every TelemetryArray has a level, and only arrays at or
+ * below the current level are sent. The level is picked from the "Telemetry Level" chooser on the
+ * dashboard, so debug values can be turned on in the pit and off at an event.
+ *
+ * <p>When the measured loop time gets close to the 20ms budget, the level is lowered automatically
+ * (debug, then normal) until the loop has room again. Competition telemetry is never shed.
+ */
+public final class Telemetry {
+  public enum Level {
+    /** Things the drivers need during a match, always sent */
+    COMPETITION,
+    /** Normal robot state */
+    NORMAL,
+    /** Detailed values for the pit */
+    DEBUG
+  }
+
+  private static final double loopBudget = TimedRobot.kDefaultPeriod;
+  // Shed a level when the loop uses more than this much of its budget...
+  private static final double shedThreshold = 0.8 * loopBudget;
+  // ...and only bring it back once the loop is comfortably under budget again
+  private static final double restoreThreshold = 0.6 * loopBudget;
+  // Loop time is noisy, so shedding looks at a decaying peak instead of single loops
+  private static final double peakDecay = 0.95;
+  // Wait this many loops after changing the level before changing it again
+  private static final int holdLoops = 50;
+
+  private static final Level[] levels = Level.values();
+
+  private static final SendableChooser<Level> chooser = new SendableChooser<>();
+
+  private static Level selectedLevel = Level.NORMAL;
+  private static int shedLevels = 0;
+  private static double loopTimePeak = 0;
+  private static int loopsSinceChange = 0;
+  private static double loopStart = 0;
+  private static double now = 0;
+
+  static {
+    chooser.setDefaultOption("Normal", Level.NORMAL);
+    chooser.addOption("Competition", Level.COMPETITION);
+    chooser.addOption("Debug", Level.DEBUG);
+    SmartDashboard.putData("Telemetry Level", chooser);
+  }
+
+  private Telemetry() {}
+
+  /** Call at the very start of every robot loop */
+  public static void beginLoop() {
+    loopStart = Timer.getFPGATimestamp();
+    now = loopStart;
+    Level selected = chooser.getSelected();
+    selectedLevel = selected != null ? selected : Level.NORMAL;
+  }
+
+  /** Call at the end of every robot loop, after everything that publishes telemetry */
+  public static void endLoop() {
+    double loopTime = Timer.getFPGATimestamp() - loopStart;
+    loopTimePeak = Math.max(loopTime, loopTimePeak * peakDecay);
+    loopsSinceChange++;
+    if (loopsSinceChange < holdLoops) {
+      return;
+    }
+    if (loopTimePeak > shedThreshold && shedLevels < selectedLevel.ordinal()) {
+      shedLevels++;
+      loopsSinceChange = 0;
+      SmartDashboard.putString("Telemetry Level (effective)", getEffectiveLevel().name());
+    } else if (loopTimePeak < restoreThreshold && shedLevels > 0) {
+      shedLevels--;
+      loopsSinceChange = 0;
+      SmartDashboard.putString("Telemetry Level (effective)", getEffectiveLevel().name());
+    }
+  }
+
+  /** The highest level being published right now, after shedding */
+  public static Level getEffectiveLevel() {
+    return levels[Math.max(selectedLevel.ordinal() - shedLevels, Level.COMPETITION.ordinal())];
+  }
+
+  public static boolean isEnabled(Level level) {
+    return level == Level.COMPETITION
+        || level.ordinal() <= selectedLevel.ordinal() - shedLevels;
+  }
+
+  /** Timestamp of the start of this loop, so publishers don't each have to read the clock */
+  public static double now() {
+    return now;
+  }
+}
@@ -0,0 +1,69 @@
+package frc.robot.util;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringArrayPublisher;
+
+/**
+ * Publishes a group of numbers as a single packed double array topic, once per loop. This replaces
+ * a pile of SmartDashboard.putNumber calls, which each build a key string and look it up in a hash
+ * map every loop, and it sends one NT value instead of one per signal.
+ *
+ * <p>Schema: the values go to /Telemetry/&lt;name&gt; and the field names, in the same order, go to
+ * /Telemetry/&lt;name&gt;_schema once at startup. Dashboards and log viewers use the schema to
+ * label the array elements.
+ *
+ * <p>Each array has a {@link Telemetry.Level} and a maximum publish rate. publish() skips the send
+ * when the level is turned off (or shed because the loop is running long) or when the array was
+ * sent too recently.
+ */
+public class TelemetryArray {
+  public static final NetworkTable table = NetworkTableInstance.getDefault().getTable("Telemetry");
+
+  private final DoubleArrayPublisher publisher;
+  // Kept so the schema topic stays published
+  private final StringArrayPublisher schemaPublisher;
+  private final double[] values;
+  private final Telemetry.Level level;
+  private final double minPeriod;
+  private double lastPublish = Double.NEGATIVE_INFINITY;
+
+  /**
+   * @param name Topic name under /Telemetry
+   * @param level Publish only when the telemetry level is at least this
+   * @param maxRateHz Publish at most this often
+   * @param fields Names of the array elements, in order
+   */
+  public TelemetryArray(String name, Telemetry.Level level, double maxRateHz, String... fields) {
+    this.level = level;
+    this.minPeriod = 1.0 / maxRateHz;
+    values = new double[fields.length];
+    publisher = table.getDoubleArrayTopic(name).publish();
+    schemaPublisher = table.getStringArrayTopic(name + "_schema").publish();
+    schemaPublisher.set(fields);
+  }
+
+  public void set(int index, double value) {
+    values[index] = value;
+  }
+
+  public int size() {
+    return values.length;
+  }
+
+  /** Whether the next publish() would actually send. Use it to skip computing debug values. */
+  public boolean isDue() {
+    // Small slack so a 50Hz array isn't skipped every other loop because of timing jitter
+    return Telemetry.isEnabled(level) && Telemetry.now() - lastPublish >= minPeriod * 0.9;
+  }
+
+  /** Sends every value set since the last call, if it is due. Call once per loop. */
+  public void publish() {
+    if (!isDue()) {
+      return;
+    }
+    lastPublish = Telemetry.now();
+    publisher.set(values);
+  }
+}
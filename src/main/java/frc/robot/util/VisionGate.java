@@ -0,0 +1,124 @@
+package frc.robot.util;
+
+/**
+ * Decides which vision estimates go into the pose estimator. An estimate that disagrees with
+ * odometry by more than their uncertainty explains is thrown out.
+ *
+ * <p>If odometry is the one that's wrong (the starting pose was never set, the robot got shoved)
+ * that would throw out every estimate forever, so after enough rejections in a row the gate can
+ * open again. Not for just any estimate though: only one that sees several tags, and only when the
+ * last few rejected multi-tag estimates agree with it about how far off odometry is. A camera that
+ * keeps reporting a bad pose (a single tag flipping between its two solutions, a reflection)
+ * doesn't agree with itself like that and stays locked out. Call {@link #reset()} when odometry is
+ * reset.
+ *
+ * <p>Nothing allocates after construction. Main thread only.
+ */
+public class VisionGate {
+  private final double maxMahalanobisSquared;
+  private final int minRejections;
+
+  // Offsets from odometry (vision minus the estimated pose at the same time) of the newest rejected
+  // multi-tag estimates, with their variances
+  private final double[] offsetXs;
+  private final double[] offsetYs;
+  private final double[] offsetThetas;
+  private final double[] variancesX;
+  private final double[] variancesY;
+  private final double[] variancesTheta;
+  private int head = 0;
+  private int stored = 0;
+
+  private int rejections = 0;
+
+  /**
+   * @param maxMahalanobisSquared Squared Mahalanobis distance above which an estimate disagrees,
+   *     both with odometry and with other estimates
+   * @param minRejections Estimates rejected in a row before odometry can be overruled
+   * @param agreeingEstimates How many multi-tag estimates in a row have to agree to overrule it
+   */
+  public VisionGate(double maxMahalanobisSquared, int minRejections, int agreeingEstimates) {
+    this.maxMahalanobisSquared = maxMahalanobisSquared;
+    this.minRejections = minRejections;
+    int history = Math.max(0, agreeingEstimates - 1);
+    offsetXs = new double[history];
+    offsetYs = new double[history];
+    offsetThetas = new double[history];
+    variancesX = new double[history];
+    variancesY = new double[history];
+    variancesTheta = new double[history];
+  }
+
+  /**
+   * @param mahalanobisSquared From SwervePoseEstimator.getMahalanobisSquared()
+   * @param offsetX Vision minus the estimated pose at the estimate's timestamp, in meters
+   * @param offsetY Same for y
+   * @param offsetTheta Same for the heading, in radians between -pi and pi
+   * @param stdDevX The estimate's standard deviations. Infinity means that axis isn't known.
+   * @param tagCount How many tags the estimate is based on
+   * @return Whether to use the estimate
+   */
+  public boolean accept(
+      double mahalanobisSquared,
+      double offsetX,
+      double offsetY,
+      double offsetTheta,
+      double stdDevX,
+      double stdDevY,
+      double stdDevTheta,
+      int tagCount) {
+    if (mahalanobisSquared <= maxMahalanobisSquared) {
+      reset();
+      return true;
+    }
+    rejections++;
+    if (tagCount < 2) {
+      return false;
+    }
+
+    double varianceX = stdDevX * stdDevX;
+    double varianceY = stdDevY * stdDevY;
+    double varianceTheta = stdDevTheta * stdDevTheta;
+    if (rejections > minRejections && stored == offsetXs.length) {
+      boolean agree = true;
+      for (int i = 0; i < stored && agree; i++) {
+        double dx = offsetX - offsetXs[i];
+        double dy = offsetY - offsetYs[i];
+        double dtheta = Math.IEEEremainder(offsetTheta - offsetThetas[i], 2 * Math.PI);
+        // An axis that isn't known on either side (infinite variance) adds nothing
+        double distance =
+            dx * dx / (varianceX + variancesX[i])
+                + dy * dy / (varianceY + variancesY[i])
+                + dtheta * dtheta / (varianceTheta + variancesTheta[i]);
+        agree = distance <= maxMahalanobisSquared;
+      }
+      if (agree) {
+        reset();
+        return true;
+      }
+    }
+
+    if (offsetXs.length > 0) {
+      offsetXs[head] = offsetX;
+      offsetYs[head] = offsetY;
+      offsetThetas[head] = offsetTheta;
+      variancesX[head] = varianceX;
+      variancesY[head] = varianceY;
+      variancesTheta[head] = varianceTheta;
+      head = (head + 1) % offsetXs.length;
+      stored = Math.min(stored + 1, offsetXs.length);
+    }
+    return false;
+  }
+
+  /** Estimates rejected since the last one that was used */
+  public int getRejections() {
+    return rejections;
+  }
+
+  /** Forgets the rejections so far */
+  public void reset() {
+    rejections = 0;
+    stored = 0;
+  }
+}
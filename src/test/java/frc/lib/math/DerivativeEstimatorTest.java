@@ -0,0 +1,184 @@
+package frc.lib.math;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Accuracy of the derivative estimators on synthetic signals: how far the rate is off and how far
+ * behind the true rate it runs. Sampled at 50Hz like the main loop, with the window sizes and gains
+ * used in DerivativeEstimatorBenchmark.
+ */
+class DerivativeEstimatorTest {
+  private static final double period = 0.02;
+  private static final double duration = 10;
+  // Samples before the estimators are judged, so the windows are full and the filter has settled
+  private static final double warmUp = 1;
+
+  private static DerivativeEstimator[] estimators() {
+    return new DerivativeEstimator[] {
+      new RateMeasurer(),
+      new LinearRegressionDerivative(10),
+      new SavitzkyGolayDerivative(10),
+      new AlphaBetaFilter(0.3, 0.05)
+    };
+  }
+
+  /** Timestamps spaced by the period, or by anything from 0.25 to 1.75 periods */
+  private static double[] timestamps(boolean uneven, Random random) {
+    int count = (int) Math.round(duration / period);
+    double[] times = new double[count];
+    double t = 1000;
+    for (int i = 0; i < count; i++) {
+      t += uneven ? period * (0.25 + 1.5 * random.nextDouble()) : period;
+      times[i] = t;
+    }
+    return times;
+  }
+
+  /**
+   * Feeds the signal plus noise to the estimator and compares its rate with the true one.
+   *
+   * @return {RMS rate error, lag in seconds, RMS error against the delayed rate}. The lag is the
+   *     delay of the true rate that best matches the estimate, so the last one is what is left
+   *     when the lag is taken out, mostly noise.
+   */
+  private static double[] measure(
+      DerivativeEstimator estimator,
+      DoubleUnaryOperator signal,
+      DoubleUnaryOperator rate,
+      double noise,
+      double[] times,
+      Random random) {
+    double[] estimates = new double[times.length];
+    for (int i = 0; i < times.length; i++) {
+      estimator.addSample(times[i], signal.applyAsDouble(times[i]) + random.nextGaussian() * noise);
+      estimates[i] = estimator.getRate();
+    }
+    double bestError = Double.POSITIVE_INFINITY;
+    double bestLag = 0;
+    double error = 0;
+    for (int lagMillis = 0; lagMillis <= 300; lagMillis++) {
+      double lag = lagMillis / 1000.0;
+      double sumSquared = 0;
+      int n = 0;
+      for (int i = 0; i < times.length; i++) {
+        if (times[i] - times[0] < warmUp) {
+          continue;
+        }
+        double difference = estimates[i] - rate.applyAsDouble(times[i] - lag);
+        sumSquared += difference * difference;
+        n++;
+      }
+      double rms = Math.sqrt(sumSquared / n);
+      if (lagMillis == 0) {
+        error = rms;
+      }
+      if (rms < bestError) {
+        bestError = rms;
+        bestLag = lag;
+      }
+    }
+    return new double[] {error, bestLag, bestError};
+  }
+
+  private static double[][] measureAll(
+      DoubleUnaryOperator signal, DoubleUnaryOperator rate, double noise, boolean uneven) {
+    Random random = new Random(3);
+    double[] times = timestamps(uneven, random);
+    DerivativeEstimator[] estimators = estimators();
+    double[][] results = new double[estimators.length][];
+    for (int i = 0; i < estimators.length; i++) {
+      results[i] = measure(estimators[i], signal, rate, noise, times, new Random(5));
+    }
+    return results;
+  }
+
+  /** Every estimator's numbers from measureAll, for assertion messages */
+  private static String describe(double[][] results) {
+    DerivativeEstimator[] estimators = estimators();
+    StringBuilder description = new StringBuilder();
+    for (int i = 0; i < results.length; i++) {
+      description.append(
+          String.format(
+              "%n%s: RMS error %.4f, lag %.0f ms, RMS error without lag %.4f",
+              estimators[i].getClass().getSimpleName(),
+              results[i][0],
+              results[i][1] * 1000,
+              results[i][2]));
+    }
+    return description.toString();
+  }
+
+  @Test
+  void rampIsExactForFits() {
+    // A line is fit exactly however the samples are spaced, and the alpha-beta filter locks on
+    for (boolean uneven : new boolean[] {false, true}) {
+      double[][] results = measureAll(t -> 2.5 * t - 7, t -> 2.5, 0, uneven);
+      String message = describe(results);
+      assertEquals(0, results[0][0], 1e-6, message);
+      assertEquals(0, results[1][0], 1e-6, message);
+      assertEquals(0, results[2][0], 1e-6, message);
+      assertEquals(0, results[3][0], 1e-3, message);
+    }
+  }
+
+  @Test
+  void savitzkyGolayIsExactForParabolas() {
+    double[][] results = measureAll(t -> 0.3 * t * t - t, t -> 0.6 * t - 1, 0, true);
+    assertEquals(0, results[2][0], 1e-6, describe(results));
+  }
+
+  @Test
+  void noisyRamp() {
+    double[][] results = measureAll(t -> 2.5 * t - 7, t -> 2.5, 0.01, false);
+    String message = describe(results);
+    double finiteDifference = results[0][0];
+    assertTrue(finiteDifference > 0.5, message);
+    // The parabola pays for not lagging with more noise than the line
+    assertTrue(results[1][0] < finiteDifference / 10, "Regression too noisy" + message);
+    assertTrue(results[2][0] < finiteDifference / 3, "Savitzky-Golay too noisy" + message);
+    assertTrue(results[3][0] < finiteDifference / 10, "Alpha-beta too noisy" + message);
+  }
+
+  @Test
+  void noisySinusoid() {
+    // 1Hz swing of +-1, about what tilt does on the charge station
+    double frequency = 2 * Math.PI;
+    double[][] results =
+        measureAll(
+            t -> Math.sin(frequency * t), t -> frequency * Math.cos(frequency * t), 0.01, false);
+    checkSinusoid(results);
+  }
+
+  @Test
+  void noisySinusoidUnevenTimestamps() {
+    double frequency = 2 * Math.PI;
+    double[][] results =
+        measureAll(
+            t -> Math.sin(frequency * t), t -> frequency * Math.cos(frequency * t), 0.01, true);
+    checkSinusoid(results);
+  }
+
+  private static void checkSinusoid(double[][] results) {
+    String message = describe(results);
+    double[] finiteDifference = results[0];
+    double[] regression = results[1];
+    double[] savitzkyGolay = results[2];
+    double[] alphaBeta = results[3];
+    // With the lag taken out, every estimator is less noisy than a plain difference. The parabola
+    // is the noisiest of them, but it is the only one whose error isn't dominated by lag.
+    assertTrue(regression[2] < finiteDifference[2] / 2, "Regression too noisy" + message);
+    assertTrue(savitzkyGolay[2] < finiteDifference[2], "Savitzky-Golay too noisy" + message);
+    assertTrue(alphaBeta[2] < finiteDifference[2], "Alpha-beta too noisy" + message);
+    assertTrue(savitzkyGolay[0] < finiteDifference[0], message);
+    // A line through 10 samples runs about half the window behind
+    assertEquals(0.09, regression[1], 0.03, message);
+    // The parabola doesn't lag
+    assertTrue(savitzkyGolay[1] <= 0.01, "Savitzky-Golay lags" + message);
+    assertTrue(alphaBeta[1] < regression[1] * 1.5, "Alpha-beta lags" + message);
+  }
+}
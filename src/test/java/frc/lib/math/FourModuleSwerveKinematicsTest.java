@@ -0,0 +1,118 @@
+package frc.lib.math;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** FourModuleSwerveKinematics against SwerveDriveKinematics on the same inputs. */
+class FourModuleSwerveKinematicsTest {
+  // Constants.Swerve.maxSpeed and maxAngularVelocity
+  private static final double maxSpeed = 4.0;
+  private static final double maxAngularVelocity = 5.0;
+
+  // Not a square and not centered, so no term cancels out by symmetry
+  private static final Translation2d[] moduleLocations = {
+    new Translation2d(0.35, 0.25),
+    new Translation2d(0.3, -0.28),
+    new Translation2d(-0.27, 0.3),
+    new Translation2d(-0.32, -0.24)
+  };
+
+  private final SwerveDriveKinematics wpilib = new SwerveDriveKinematics(moduleLocations);
+  private final FourModuleSwerveKinematics kinematics =
+      new FourModuleSwerveKinematics(moduleLocations);
+  private final double[] speeds = new double[4];
+  private final double[] angles = new double[4];
+
+  private static void assertStates(SwerveModuleState[] expected, double[] s, double[] a) {
+    for (int i = 0; i < 4; i++) {
+      assertEquals(expected[i].speedMetersPerSecond, s[i], 1e-9, "Speed of module " + i);
+      double angleError = MathUtil.inputModulus(a[i] - expected[i].angle.getDegrees(), -180, 180);
+      assertEquals(0, angleError, 1e-9, "Angle of module " + i);
+    }
+  }
+
+  @Test
+  void moduleStatesMatch() {
+    Random random = new Random(11);
+    for (int n = 0; n < 1000; n++) {
+      ChassisSpeeds chassis =
+          new ChassisSpeeds(
+              (random.nextDouble() * 2 - 1) * 6,
+              (random.nextDouble() * 2 - 1) * 6,
+              (random.nextDouble() * 2 - 1) * 15);
+      kinematics.toModuleStates(
+          chassis.vxMetersPerSecond,
+          chassis.vyMetersPerSecond,
+          chassis.omegaRadiansPerSecond,
+          speeds,
+          angles);
+      assertStates(wpilib.toSwerveModuleStates(chassis), speeds, angles);
+    }
+  }
+
+  @Test
+  void desaturationMatches() {
+    // Up to well past the limits, so most of these get scaled down
+    Random random = new Random(13);
+    for (int n = 0; n < 1000; n++) {
+      ChassisSpeeds chassis =
+          new ChassisSpeeds(
+              (random.nextDouble() * 2 - 1) * 6,
+              (random.nextDouble() * 2 - 1) * 6,
+              (random.nextDouble() * 2 - 1) * 15);
+      SwerveModuleState[] expected = wpilib.toSwerveModuleStates(chassis);
+      SwerveDriveKinematics.desaturateWheelSpeeds(
+          expected, chassis, maxSpeed, maxSpeed, maxAngularVelocity);
+
+      double scale =
+          kinematics.desaturationScale(
+              chassis.vxMetersPerSecond,
+              chassis.vyMetersPerSecond,
+              chassis.omegaRadiansPerSecond,
+              maxSpeed,
+              maxSpeed,
+              maxAngularVelocity);
+      double desaturatedScale =
+          kinematics.toDesaturatedModuleStates(
+              chassis.vxMetersPerSecond,
+              chassis.vyMetersPerSecond,
+              chassis.omegaRadiansPerSecond,
+              maxSpeed,
+              maxSpeed,
+              maxAngularVelocity,
+              speeds,
+              angles);
+      assertEquals(scale, desaturatedScale);
+      assertStates(expected, speeds, angles);
+    }
+  }
+
+  @Test
+  void stoppingKeepsTheLastAngles() {
+    ChassisSpeeds moving = new ChassisSpeeds(1.2, -0.7, 2.5);
+    wpilib.toSwerveModuleStates(moving);
+    kinematics.toModuleStates(1.2, -0.7, 2.5, speeds, angles);
+
+    ChassisSpeeds stopped = new ChassisSpeeds();
+    SwerveModuleState[] expected = wpilib.toSwerveModuleStates(stopped);
+    kinematics.toModuleStates(0, 0, 0, speeds, angles);
+    assertStates(expected, speeds, angles);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(0, speeds[i]);
+    }
+
+    // Desaturation leaves a stop alone too
+    double scale =
+        kinematics.toDesaturatedModuleStates(
+            0, 0, 0, maxSpeed, maxSpeed, maxAngularVelocity, speeds, angles);
+    assertEquals(1, scale);
+    assertStates(expected, speeds, angles);
+  }
+}
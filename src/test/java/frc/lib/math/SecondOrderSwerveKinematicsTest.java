@@ -0,0 +1,152 @@
+package frc.lib.math;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * SecondOrderSwerveKinematics against central differences of its own module states, taken along a
+ * chassis that accelerates and spins up in field coordinates.
+ */
+class SecondOrderSwerveKinematicsTest {
+  private static final double h = 1e-5;
+
+  // Not a square and not centered, so no term cancels out by symmetry
+  private static final Translation2d[] moduleLocations = {
+    new Translation2d(0.35, 0.25),
+    new Translation2d(0.3, -0.28),
+    new Translation2d(-0.27, 0.3),
+    new Translation2d(-0.32, -0.24)
+  };
+
+  private final SecondOrderSwerveKinematics kinematics =
+      new SecondOrderSwerveKinematics(moduleLocations);
+  private final double[] speeds = new double[4];
+  private final double[] angles = new double[4];
+  private final double[] accelerations = new double[4];
+  private final double[] angleVelocities = new double[4];
+  private final double[] speedsBefore = new double[4];
+  private final double[] anglesBefore = new double[4];
+  private final double[] speedsAfter = new double[4];
+  private final double[] anglesAfter = new double[4];
+  private final double[] unused = new double[4];
+
+  /**
+   * Module states at time t for a chassis starting at the field velocity (fieldVx, fieldVy) with
+   * heading 0, accelerating at (fieldAx, fieldAy) while its rate goes from omega at alpha.
+   */
+  private void statesAt(
+      double t,
+      double fieldVx,
+      double fieldVy,
+      double fieldAx,
+      double fieldAy,
+      double omega,
+      double alpha,
+      double[] speedsOut,
+      double[] anglesOut) {
+    double heading = omega * t + 0.5 * alpha * t * t;
+    double vx = fieldVx + fieldAx * t;
+    double vy = fieldVy + fieldAy * t;
+    double cos = Math.cos(heading);
+    double sin = Math.sin(heading);
+    kinematics.toModuleStates(
+        vx * cos + vy * sin,
+        -vx * sin + vy * cos,
+        omega + alpha * t,
+        0,
+        0,
+        0,
+        speedsOut,
+        anglesOut,
+        unused,
+        unused);
+  }
+
+  @Test
+  void matchesFiniteDifferences() {
+    Random random = new Random(41);
+    for (int n = 0; n < 1000; n++) {
+      double fieldVx = (random.nextDouble() * 2 - 1) * 4;
+      double fieldVy = (random.nextDouble() * 2 - 1) * 4;
+      double fieldAx = (random.nextDouble() * 2 - 1) * 8;
+      double fieldAy = (random.nextDouble() * 2 - 1) * 8;
+      double omega = (random.nextDouble() * 2 - 1) * 5;
+      double alpha = (random.nextDouble() * 2 - 1) * 20;
+
+      // Heading is 0 at t = 0, so the field acceleration is also the robot relative one
+      kinematics.toModuleStates(
+          fieldVx,
+          fieldVy,
+          omega,
+          fieldAx,
+          fieldAy,
+          alpha,
+          speeds,
+          angles,
+          accelerations,
+          angleVelocities);
+      statesAt(-h, fieldVx, fieldVy, fieldAx, fieldAy, omega, alpha, speedsBefore, anglesBefore);
+      statesAt(h, fieldVx, fieldVy, fieldAx, fieldAy, omega, alpha, speedsAfter, anglesAfter);
+
+      for (int i = 0; i < 4; i++) {
+        // Near a stop the angle turns too fast to difference
+        if (speeds[i] < 0.1) {
+          continue;
+        }
+        String message = "Module " + i + " on case " + n;
+        double acceleration = (speedsAfter[i] - speedsBefore[i]) / (2 * h);
+        double angleVelocity =
+            MathUtil.inputModulus(anglesAfter[i] - anglesBefore[i], -180, 180) / (2 * h);
+        assertEquals(acceleration, accelerations[i], 1e-4 * (1 + Math.abs(acceleration)), message);
+        assertEquals(
+            angleVelocity, angleVelocities[i], 1e-4 * (1 + Math.abs(angleVelocity)), message);
+      }
+    }
+  }
+
+  @Test
+  void flippedModulesGetTheSameTurningRate() {
+    kinematics.toModuleStates(
+        1.5, -0.5, 2, 3, 1, -4, speeds, angles, accelerations, angleVelocities);
+    double[] flippedSpeeds = new double[4];
+    double[] flippedAngles = new double[4];
+    double[] flippedAccelerations = new double[4];
+    double[] flippedAngleVelocities = new double[4];
+    for (int i = 0; i < 4; i++) {
+      flippedSpeeds[i] = -speeds[i];
+      flippedAngles[i] = angles[i] + 180;
+    }
+    kinematics.toModuleFeedforward(
+        1.5,
+        -0.5,
+        2,
+        3,
+        1,
+        -4,
+        flippedSpeeds,
+        flippedAngles,
+        flippedAccelerations,
+        flippedAngleVelocities);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(-accelerations[i], flippedAccelerations[i], 1e-9);
+      assertEquals(angleVelocities[i], flippedAngleVelocities[i], 1e-9);
+    }
+  }
+
+  @Test
+  void stoppedModulesKeepTheirAngle() {
+    for (int i = 0; i < 4; i++) {
+      angles[i] = 30 * i;
+    }
+    kinematics.toModuleStates(0, 0, 0, 1, 2, 3, speeds, angles, accelerations, angleVelocities);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(0, speeds[i]);
+      assertEquals(30 * i, angles[i]);
+      assertEquals(0, angleVelocities[i]);
+    }
+  }
+}
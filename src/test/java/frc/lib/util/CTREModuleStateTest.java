@@ -0,0 +1,140 @@
+package frc.lib.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * CTREModuleState.optimize against the version that unwound the angle 360 degrees at a time, which
+ * is copied here (same as CTREModuleStateBenchmark.optimizeLoops).
+ */
+class CTREModuleStateTest {
+  private final double[] expected = new double[2];
+  private final double[] actual = new double[2];
+
+  private static void optimizeLoops(
+      double speedMetersPerSecond,
+      double angleDegrees,
+      double currentAngleDegrees,
+      double[] out) {
+    double targetAngle = placeInAppropriate0To360Scope(currentAngleDegrees, angleDegrees);
+    double targetSpeed = speedMetersPerSecond;
+    double delta = targetAngle - currentAngleDegrees;
+    if (Math.abs(delta) > 90) {
+      targetSpeed = -targetSpeed;
+      targetAngle = delta > 90 ? (targetAngle -= 180) : (targetAngle += 180);
+    }
+    out[0] = targetSpeed;
+    out[1] = targetAngle;
+  }
+
+  private static double placeInAppropriate0To360Scope(double scopeReference, double newAngle) {
+    double lowerBound;
+    double upperBound;
+    double lowerOffset = scopeReference % 360;
+    if (lowerOffset >= 0) {
+      lowerBound = scopeReference - lowerOffset;
+      upperBound = scopeReference + (360 - lowerOffset);
+    } else {
+      upperBound = scopeReference - lowerOffset;
+      lowerBound = scopeReference - (360 + lowerOffset);
+    }
+    while (newAngle < lowerBound) {
+      newAngle += 360;
+    }
+    while (newAngle > upperBound) {
+      newAngle -= 360;
+    }
+    if (newAngle - scopeReference > 180) {
+      newAngle -= 360;
+    } else if (newAngle - scopeReference < -180) {
+      newAngle += 360;
+    }
+    return newAngle;
+  }
+
+  private void check(double speed, double desiredDegrees, double currentDegrees) {
+    optimizeLoops(speed, desiredDegrees, currentDegrees, expected);
+    boolean reversed = CTREModuleState.optimize(speed, desiredDegrees, currentDegrees, actual);
+    String message = "Desired " + desiredDegrees + ", current " + currentDegrees;
+    assertEquals(expected[0], actual[0], message);
+    assertEquals(expected[0] != speed, reversed, message);
+    // The old version added up revolutions, so on a wound up angle it can be off by an ulp or two
+    double tolerance = Math.max(1e-9, Math.ulp(Math.abs(currentDegrees)) * 4);
+    assertEquals(expected[1], actual[1], tolerance, message);
+  }
+
+  @Test
+  void randomAngles() {
+    Random random = new Random(17);
+    for (int i = 0; i < 10_000; i++) {
+      check(
+          (random.nextDouble() * 2 - 1) * 4,
+          (random.nextDouble() * 2 - 1) * 180,
+          (random.nextDouble() * 2 - 1) * 720);
+    }
+  }
+
+  @Test
+  void quarterAndHalfTurns() {
+    for (double current : new double[] {0, 37, -123.5, 720, -1080, 7230}) {
+      for (double turn : new double[] {90, -90, 180, -180, 270, -270}) {
+        check(2.5, current + turn, current);
+        check(-2.5, current + turn, current);
+      }
+    }
+  }
+
+  @Test
+  void exactQuarterTurnIsNotReversed() {
+    assertFalse(CTREModuleState.optimize(1, 90, 0, actual));
+    assertEquals(1, actual[0]);
+    assertEquals(90, actual[1]);
+    assertFalse(CTREModuleState.optimize(1, -90, 0, actual));
+    assertEquals(-90, actual[1]);
+  }
+
+  @Test
+  void multiplesOf360() {
+    for (int current = -5; current <= 5; current++) {
+      for (int desired = -3; desired <= 3; desired++) {
+        check(1.5, desired * 360, current * 360);
+        check(1.5, desired * 360 + 45, current * 360);
+        check(1.5, desired * 360 - 135, current * 360);
+      }
+    }
+  }
+
+  @Test
+  void largeContinuousAngles() {
+    // The CTRE angle keeps counting up over a match, the old version looped once per revolution
+    Random random = new Random(19);
+    for (double current : new double[] {3_600_000.5, -360_030, 1e6 + 0.25, -2.5e6 - 17}) {
+      for (int i = 0; i < 200; i++) {
+        check(2, (random.nextDouble() * 2 - 1) * 180, current + random.nextDouble() * 360);
+      }
+    }
+  }
+
+  @Test
+  void objectVersionMatches() {
+    Random random = new Random(23);
+    for (int i = 0; i < 1000; i++) {
+      double speed = (random.nextDouble() * 2 - 1) * 4;
+      double desired = (random.nextDouble() * 2 - 1) * 180;
+      double current = (random.nextDouble() * 2 - 1) * 720;
+      optimizeLoops(speed, desired, current, expected);
+      SwerveModuleState state =
+          CTREModuleState.optimize(
+              new SwerveModuleState(speed, Rotation2d.fromDegrees(desired)),
+              Rotation2d.fromDegrees(current));
+      assertEquals(expected[0], state.speedMetersPerSecond);
+      // Rotation2d only keeps the direction
+      assertEquals(0, Math.IEEEremainder(expected[1] - state.angle.getDegrees(), 360), 1e-9);
+    }
+  }
+}
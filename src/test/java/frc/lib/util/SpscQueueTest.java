@@ -0,0 +1,170 @@
+package frc.lib.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/** SpscQueue on one thread for the edge cases, then with a real producer and consumer. */
+class SpscQueueTest {
+  /** What VisionCamera hands over, cut down: a few fields that have to arrive together */
+  private static class Item {
+    long sequence;
+    long check;
+
+    void set(long sequence) {
+      this.sequence = sequence;
+      check = sequence * 31 + 7;
+    }
+  }
+
+  @Test
+  void capacityRoundsUpToPowerOfTwo() {
+    assertEquals(1, new SpscQueue<Item>(0).capacity());
+    assertEquals(1, new SpscQueue<Item>(1).capacity());
+    assertEquals(4, new SpscQueue<Item>(3).capacity());
+    assertEquals(32, new SpscQueue<Item>(32).capacity());
+    assertEquals(64, new SpscQueue<Item>(33).capacity());
+  }
+
+  @Test
+  void claimPublishPeekRelease() {
+    SpscQueue<Item> queue = new SpscQueue<>(4, Item::new);
+    assertNull(queue.peek());
+
+    Item claimed = queue.claim();
+    assertNotNull(claimed);
+    // Nothing is handed over until it's published
+    assertNull(queue.peek());
+    claimed.set(1);
+    queue.publish();
+
+    Item peeked = queue.peek();
+    assertSame(claimed, peeked);
+    assertEquals(1, peeked.sequence);
+    // Peeking doesn't remove it
+    assertSame(peeked, queue.peek());
+    queue.release();
+    assertNull(queue.peek());
+  }
+
+  @Test
+  void fullQueueRefusesClaimsUntilReleased() {
+    SpscQueue<Item> queue = new SpscQueue<>(4, Item::new);
+    Item[] slots = new Item[4];
+    for (int i = 0; i < 4; i++) {
+      slots[i] = queue.claim();
+      assertNotNull(slots[i], "Claim " + i);
+      slots[i].set(i);
+      queue.publish();
+    }
+    assertNull(queue.claim());
+
+    queue.release();
+    // The released object comes back around for the producer to fill in again
+    Item reused = queue.claim();
+    assertSame(slots[0], reused);
+    reused.set(4);
+    queue.publish();
+    assertNull(queue.claim());
+
+    for (int i = 1; i <= 4; i++) {
+      assertEquals(i, queue.peek().sequence);
+      queue.release();
+    }
+    assertNull(queue.peek());
+  }
+
+  @Test
+  void offerAndPoll() {
+    SpscQueue<Item> queue = new SpscQueue<>(2);
+    assertNull(queue.poll());
+    Item first = new Item();
+    Item second = new Item();
+    assertTrue(queue.offer(first));
+    assertTrue(queue.offer(second));
+    assertFalse(queue.offer(new Item()));
+    assertSame(first, queue.poll());
+    assertTrue(queue.offer(first));
+    assertSame(second, queue.poll());
+    assertSame(first, queue.poll());
+    assertNull(queue.poll());
+  }
+
+  @Test
+  void wrapsAroundManyTimes() {
+    SpscQueue<Item> queue = new SpscQueue<>(4, Item::new);
+    long next = 0;
+    long expected = 0;
+    for (int round = 0; round < 1000; round++) {
+      // Uneven amounts, so head and tail end up at every offset
+      for (int i = 0; i < round % 5; i++) {
+        Item item = queue.claim();
+        if (item == null) {
+          break;
+        }
+        item.set(next++);
+        queue.publish();
+      }
+      for (int i = 0; i < round % 3; i++) {
+        Item item = queue.peek();
+        if (item == null) {
+          break;
+        }
+        assertEquals(expected++, item.sequence);
+        queue.release();
+      }
+    }
+    for (Item item = queue.peek(); item != null; item = queue.peek()) {
+      assertEquals(expected++, item.sequence);
+      queue.release();
+    }
+    assertEquals(next, expected);
+  }
+
+  @Test
+  void producerAndConsumerThreads() throws InterruptedException {
+    SpscQueue<Item> queue = new SpscQueue<>(8, Item::new);
+    long count = 200_000;
+    Thread producer =
+        new Thread(
+            () -> {
+              for (long i = 0; i < count; ) {
+                Item item = queue.claim();
+                if (item == null) {
+                  Thread.yield();
+                  continue;
+                }
+                item.set(i++);
+                queue.publish();
+              }
+            });
+    // A failed assertion leaves it waiting on a full queue, so don't let it hold up the JVM
+    producer.setDaemon(true);
+    producer.start();
+
+    long expected = 0;
+    while (expected < count) {
+      Item item = queue.peek();
+      if (item == null) {
+        Thread.yield();
+        continue;
+      }
+      // In order, nothing skipped, and both fields from the same write
+      long sequence = item.sequence;
+      long check = item.check;
+      if (sequence != expected || check != sequence * 31 + 7) {
+        assertEquals(expected, sequence, "Out of order");
+        assertEquals(sequence * 31 + 7, check, "Torn item " + sequence);
+      }
+      expected++;
+      queue.release();
+    }
+    producer.join();
+    assertNull(queue.peek());
+  }
+}
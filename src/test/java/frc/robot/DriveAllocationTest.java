@@ -0,0 +1,188 @@
+package frc.robot;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.controller.SimpleMotorFeedforward;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.lib.math.FourModuleSwerveKinematics;
+import frc.lib.math.SavitzkyGolayDerivative;
+import frc.lib.math.SecondOrderSwerveKinematics;
+import frc.robot.util.ChassisVelocityEstimator;
+import frc.robot.util.LatencyEstimator;
+import frc.robot.util.PoseHistory;
+import frc.robot.util.SwerveDrivePipeline;
+import frc.robot.util.SwervePoseEstimator;
+import frc.robot.util.SwerveSetpointGenerator;
+import java.lang.management.ManagementFactory;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Makes sure a drive loop doesn't create garbage, so GC pauses stay out of matches. Swerve and
+ * SwerveModule need the CAN bus, so this runs the classes they hand their work to, in the same
+ * order: odometry, velocity and pose history from periodic(), then SwerveDrivePipeline for drive()
+ * and SwerveModuleDemands for each module. Only the motor calls are left out. Constants can't be
+ * loaded without the CTRE libraries, so its values are copied here.
+ */
+class DriveAllocationTest {
+  private static final double period = 0.02;
+  // Constants.Swerve
+  private static final double maxSpeed = 4.0;
+  private static final double maxAngularVelocity = 5.0;
+  private static final double halfTrackWidth = 0.0254 * 23.75 / 2;
+  // SDS MK4i L2
+  private static final double wheelCircumference = 0.0254 * 4 * Math.PI;
+  private static final double driveGearRatio = 6.75;
+  private static final double angleGearRatio = 150.0 / 7;
+
+  private static final Translation2d[] moduleLocations = {
+    new Translation2d(halfTrackWidth, halfTrackWidth),
+    new Translation2d(halfTrackWidth, -halfTrackWidth),
+    new Translation2d(-halfTrackWidth, halfTrackWidth),
+    new Translation2d(-halfTrackWidth, -halfTrackWidth)
+  };
+
+  private final SwerveDrivePipeline pipeline =
+      new SwerveDrivePipeline(
+          new FourModuleSwerveKinematics(moduleLocations),
+          new SecondOrderSwerveKinematics(moduleLocations),
+          // Constants.Swerve.maxDriveAcceleration and maxAzimuthVelocity
+          new SwerveSetpointGenerator(moduleLocations, 8.0, Math.toRadians(720)),
+          maxSpeed,
+          maxAngularVelocity);
+  private final SwerveModuleDemands[] modules = new SwerveModuleDemands[4];
+  private final ChassisVelocityEstimator velocityEstimator =
+      new ChassisVelocityEstimator(moduleLocations, 3);
+  private final PoseHistory poseHistory = new PoseHistory(2.0, period);
+  private final LatencyEstimator latency = new LatencyEstimator(period, 10, 0.99, 0.3, 50, 0.04);
+  private final SavitzkyGolayDerivative tiltRate = new SavitzkyGolayDerivative(10);
+
+  private final double[] distances = new double[4];
+  private final double[] angles = new double[4];
+  private final double[] velocities = new double[4];
+  // Continuous module angles, where the azimuths were last sent
+  private final double[] moduleAngles = new double[4];
+
+  private SwervePoseEstimator poseEstimator;
+  // Keeps the results alive so nothing gets optimized away
+  private double sink = 0;
+
+  @Test
+  void driveLoopDoesNotAllocate() {
+    for (int m = 0; m < 4; m++) {
+      // Constants.Swerve.driveKS, driveKV, driveKA and angleKV
+      modules[m] =
+          new SwerveModuleDemands(
+              new SimpleMotorFeedforward(0.106 / 12, 2.394 / 12, 0.304 / 12),
+              maxSpeed,
+              wheelCircumference,
+              driveGearRatio,
+              angleGearRatio,
+              0.385 / 12);
+    }
+    poseEstimator =
+        new SwervePoseEstimator(moduleLocations, period, 0, distances, angles, new Pose2d());
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+
+    // Class loading, lazy init and the JIT all allocate, so get them out of the way first
+    for (int i = 0; i < 20_000; i++) {
+      loop(i);
+    }
+    long before = threads.getThreadAllocatedBytes(thread);
+    int loops = 10_000;
+    for (int i = 0; i < loops; i++) {
+      loop(20_000 + i);
+    }
+    long allocated = threads.getThreadAllocatedBytes(thread) - before;
+    // Less than one small object per 100 loops, to leave room for the measurement itself
+    assertTrue(
+        allocated < 4096,
+        "Drive loop allocated " + allocated + " bytes over " + loops + " loops, sink " + sink);
+  }
+
+  private void loop(int i) {
+    double t = i * period;
+    // Driver input that keeps changing, so every branch gets used
+    double xSpeed = maxSpeed * Math.sin(t * 0.7);
+    double ySpeed = maxSpeed * Math.cos(t * 1.3);
+    double rotation = maxAngularVelocity * Math.sin(t * 0.4);
+    boolean isOpenLoop = (i / 500) % 2 == 0;
+
+    // Swerve.periodic(): odometry, tilt rate, measured velocity, pose history. The modules do
+    // exactly what they were told last loop.
+    double[] moduleSpeeds = pipeline.getModuleSpeeds();
+    for (int m = 0; m < 4; m++) {
+      velocities[m] = moduleSpeeds[m];
+      distances[m] += velocities[m] * period;
+      angles[m] = Math.toRadians(moduleAngles[m]);
+    }
+    double heading = poseEstimator.getRotationRadians() + pipeline.getSetpointOmega() * period;
+    poseEstimator.updateWithTime(t, heading, distances, angles);
+    tiltRate.addSample(t, 0.05 * Math.abs(Math.sin(t)));
+    sink += tiltRate.getRate();
+    velocityEstimator.update(velocities, angles, pipeline.getSetpointOmega(), heading);
+    latency.update(
+        pipeline.getSetpointOmega(),
+        velocityEstimator.getRobotRelativeSpeeds().omegaRadiansPerSecond);
+    poseHistory.record(
+        t,
+        poseEstimator.getX(),
+        poseEstimator.getY(),
+        poseEstimator.getRotationRadians(),
+        velocityEstimator.getFieldRelativeSpeeds().vxMetersPerSecond,
+        velocityEstimator.getFieldRelativeSpeeds().vyMetersPerSecond,
+        velocityEstimator.getFieldRelativeSpeeds().omegaRadiansPerSecond);
+
+    // Swerve.measureLoopTime() after the robot sat still for a while
+    if (i % 1000 == 0) {
+      pipeline.reset(
+          velocityEstimator.getRobotRelativeSpeeds().vxMetersPerSecond,
+          velocityEstimator.getRobotRelativeSpeeds().vyMetersPerSecond,
+          velocityEstimator.getRobotRelativeSpeeds().omegaRadiansPerSecond,
+          velocityEstimator.getFieldRelativeSpeeds().vxMetersPerSecond,
+          velocityEstimator.getFieldRelativeSpeeds().vyMetersPerSecond,
+          velocities,
+          angles);
+    }
+
+    // Swerve.drive(), field relative
+    double heightFraction = 0.5 + 0.5 * Math.sin(t * 0.1);
+    pipeline.calculate(
+        xSpeed,
+        ySpeed,
+        rotation,
+        0,
+        0,
+        0,
+        true,
+        heading + pipeline.getSetpointOmega() * latency.getLatencySeconds(),
+        heading,
+        0.3 + 0.3 * heightFraction,
+        period);
+
+    // SwerveModule.setDesiredState()
+    double[] speeds = pipeline.getModuleSpeeds();
+    double[] targetAngles = pipeline.getModuleAngles();
+    double[] accelerations = pipeline.getModuleAccelerations();
+    double[] angleVelocities = pipeline.getModuleAngleVelocities();
+    for (int m = 0; m < 4; m++) {
+      SwerveModuleDemands module = modules[m];
+      module.calculate(
+          speeds[m],
+          targetAngles[m],
+          accelerations[m],
+          angleVelocities[m],
+          moduleAngles[m],
+          isOpenLoop);
+      moduleAngles[m] = module.getAngleDegrees();
+      sink +=
+          module.getDrivePercentOutput()
+              + module.getDriveVelocity()
+              + module.getDriveFeedforward()
+              + module.getAnglePosition()
+              + module.getAngleFeedforward();
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package frc.robot;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** LimelightResults.parse on frames laid out like the 2023 firmware's "json" entry. */
+class LimelightResultsTest {
+  // One tag in view, wrapped in "Results" with the sections we don't use left in
+  private static final String oneTag =
+      "{\"Results\":{\"Classifier\":[],\"Detector\":[],\"Fiducial\":[{\"fID\":7,\"fam\":\"16H5C\","
+          + "\"pts\":[],\"skew\":[],"
+          + "\"t6c_ts\":[-0.3125,0.0871,-2.2514,-1.4407,8.0338,0.2176],"
+          + "\"t6r_fs\":[-5.7352,-1.8231,0.4064,-0.8711,-1.2013,178.4612],"
+          + "\"t6r_ts\":[-0.2216,0.3812,-2.5637,-2.0174,7.9415,-0.1187],"
+          + "\"t6t_cs\":[0.2714,-0.0322,2.2931,1.1925,-8.0122,-0.5053],"
+          + "\"t6t_rs\":[0.3498,-0.2087,2.5124,1.7733,-7.9911,-0.3221],"
+          + "\"ta\":0.0102,\"tx\":-6.9023,\"txp\":255.1,\"ty\":-1.0071,\"typ\":168.3}],"
+          + "\"Retro\":[],"
+          + "\"botpose\":[-5.7352,-1.8231,0.4064,-0.8711,-1.2013,178.4612],"
+          + "\"botpose_wpiblue\":[2.5326,2.1776,0.4064,-0.8711,-1.2013,178.4612],"
+          + "\"botpose_wpired\":[14.0030,5.8238,0.4064,-0.8711,-1.2013,-1.5388],"
+          + "\"cl\":11.0,\"pID\":0.0,\"tl\":23.4102,\"ts\":8714301.5531,\"v\":1}}";
+
+  private final LimelightResults results = new LimelightResults();
+
+  @Test
+  void parsesWrappedFrame() {
+    assertTrue(results.parse(oneTag));
+    assertTrue(results.valid);
+    assertEquals(0, results.pipelineIndex);
+    assertEquals(8714301.5531, results.timestamp);
+    assertEquals((11.0 + 23.4102) / 1000, results.getLatencySeconds(), 1e-15);
+    assertArrayEquals(
+        new double[] {2.5326, 2.1776, 0.4064, -0.8711, -1.2013, 178.4612}, results.botposeWpiBlue);
+    assertArrayEquals(
+        new double[] {14.0030, 5.8238, 0.4064, -0.8711, -1.2013, -1.5388}, results.botposeWpiRed);
+
+    assertEquals(1, results.fiducialCount);
+    LimelightResults.Fiducial tag = results.fiducials[0];
+    assertEquals(7, tag.id);
+    assertEquals(0.0102, tag.area);
+    assertEquals(-6.9023, tag.tx);
+    assertEquals(168.3, tag.tyPixels);
+    double[] targetPose = {0.2714, -0.0322, 2.2931, 1.1925, -8.0122, -0.5053};
+    assertArrayEquals(targetPose, tag.targetPoseCameraSpace);
+    double distance = Math.sqrt(0.2714 * 0.2714 + 0.0322 * 0.0322 + 2.2931 * 2.2931);
+    assertEquals(distance, tag.getDistance());
+    assertEquals(tag.getDistance(), results.getAverageTagDistance());
+  }
+
+  @Test
+  void parsesUnwrappedFrame() {
+    // Older firmware puts everything at the top level
+    String unwrapped = oneTag.substring("{\"Results\":".length(), oneTag.length() - 1);
+    assertTrue(results.parse(unwrapped));
+    assertTrue(results.valid);
+    assertEquals(1, results.fiducialCount);
+    assertEquals(8714301.5531, results.timestamp);
+  }
+
+  @Test
+  void skipsUnknownKeysAndEscapedStrings() {
+    String frame =
+        "{\"Results\":{\"Detector\":[{\"class\":\"cone \\\"upright\\\" \\\\\",\"classID\":1,"
+            + "\"conf\":0.87,\"pts\":[[1,2],[3,4]],\"nested\":{\"a\":[true,false,null],\"b\":{}}}],"
+            + "\"firmware\":\"2023.4 \\u00e9\\/\",\"flag\":false,\"nothing\":null,"
+            + "\"Fiducial\":[{\"fID\":3,\"unknown\":{\"x\":[\"]\",\"}\"]},\"tx\":1.5}],"
+            + "\"ts\":12.5,\"v\":1}}";
+    assertTrue(results.parse(frame));
+    assertTrue(results.valid);
+    assertEquals(12.5, results.timestamp);
+    assertEquals(1, results.fiducialCount);
+    assertEquals(3, results.fiducials[0].id);
+    assertEquals(1.5, results.fiducials[0].tx);
+  }
+
+  @Test
+  void readsExponentsAndNegatives() {
+    String[] numbers = {
+      "0", "-0", "-0.0", "1e3", "1E3", "1e+3", "-2.5e-3", "6.02214076E23", "-1.6e-19", "123e-2",
+      "0.000001", "-7", "1.7976931348623157e308", "4.9e-324", "2.2250738585072014E-308", "1e-400",
+      "12345678901234567890123"
+    };
+    for (String number : numbers) {
+      assertTrue(results.parse("{\"ts\":" + number + "}"), number);
+      assertEquals(Double.parseDouble(number), results.timestamp, ulps(number, 2), number);
+    }
+  }
+
+  @Test
+  void matchesParseDouble() {
+    Random random = new Random(31);
+    for (int i = 0; i < 100_000; i++) {
+      double value = (random.nextDouble() * 2 - 1) * Math.pow(10, random.nextInt(12) - 6);
+      // Numbers as the Limelight sends them, and shortest round trip ones with up to 17 digits
+      String shortNumber = String.format("%.4f", value);
+      String longNumber = Double.toString(value);
+      assertTrue(results.parse("{\"botpose\":[" + shortNumber + "," + longNumber + "]}"));
+      // Up to 15 digits it's correctly rounded, longer ones round more than once
+      assertEquals(Double.parseDouble(shortNumber), results.botpose[0], shortNumber);
+      assertEquals(Double.parseDouble(longNumber), results.botpose[1], ulps(longNumber, 2));
+    }
+  }
+
+  @Test
+  void keepsFirstSixteenFiducials() {
+    StringBuilder frame = new StringBuilder("{\"Results\":{\"Fiducial\":[");
+    for (int i = 0; i < 20; i++) {
+      if (i > 0) {
+        frame.append(',');
+      }
+      frame.append("{\"fID\":").append(i + 1).append(",\"t6t_cs\":[0,0,").append(i + 1);
+      frame.append(",0,0,0]}");
+    }
+    // Keys after the list still have to be read
+    frame.append("],\"ts\":42,\"v\":1}}");
+    assertTrue(results.parse(frame.toString()));
+    assertTrue(results.valid);
+    assertEquals(42, results.timestamp);
+    assertEquals(LimelightResults.maxFiducials, results.fiducialCount);
+    for (int i = 0; i < LimelightResults.maxFiducials; i++) {
+      assertEquals(i + 1, results.fiducials[i].id);
+    }
+    assertEquals(8.5, results.getAverageTagDistance());
+  }
+
+  @Test
+  void truncatedFramesFail() {
+    for (int length = 0; length < oneTag.length(); length++) {
+      String truncated = oneTag.substring(0, length);
+      assertFalse(results.parse(truncated), truncated);
+      assertFalse(results.valid);
+      assertEquals(0, results.fiducialCount);
+    }
+    // And a full one still works after all that
+    assertTrue(results.parse(oneTag));
+    assertEquals(1, results.fiducialCount);
+  }
+
+  @Test
+  void malformedFramesFail() {
+    String[] frames = {
+      null,
+      "",
+      "[1,2]",
+      "{\"v\":}",
+      "{\"v\" 1}",
+      "{\"v\":1,}",
+      "{v:1}",
+      "{\"v\":1 \"ts\":2}",
+      "{\"botpose\":[1,,2]}",
+      "{\"botpose\":[1,2}",
+      "{\"ts\":-}",
+      "{\"ts\":.}",
+      "{\"Fiducial\":[{\"fID\":1]}",
+      "{\"name\":\"unterminated}"
+    };
+    for (String frame : frames) {
+      assertTrue(results.parse(oneTag));
+      assertFalse(results.parse(frame), frame);
+      // Nothing from the frame before is left over
+      assertFalse(results.valid, frame);
+      assertEquals(0, results.fiducialCount, frame);
+      assertEquals(0, results.timestamp, frame);
+    }
+  }
+
+  /** n ulps of the value number stands for */
+  private static double ulps(String number, int n) {
+    return Math.ulp(Double.parseDouble(number)) * n;
+  }
+}
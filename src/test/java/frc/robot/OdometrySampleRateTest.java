@@ -0,0 +1,109 @@
+package frc.robot;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.util.SwervePoseEstimator;
+import org.junit.jupiter.api.Test;
+
+/**
+ * How much odometry error the odometry thread's 250Hz sampling saves over updating once per 20ms
+ * loop. The robot drives an aggressive path, integrated exactly at 1kHz, and the pose estimator is
+ * fed module positions and the gyro at each rate. The gyro is perfect, so all of the error comes
+ * from integrating the modules between samples as if they hadn't turned.
+ */
+class OdometrySampleRateTest {
+  private static final double simulationPeriod = 0.001;
+  private static final double duration = 5.0;
+  // Constants.Swerve.odometryFrequency
+  private static final double threadHz = 250;
+
+  private static final Translation2d[] moduleLocations = {
+    new Translation2d(0.3, 0.3),
+    new Translation2d(0.3, -0.3),
+    new Translation2d(-0.3, 0.3),
+    new Translation2d(-0.3, -0.3)
+  };
+
+  @Test
+  void sampling250HzBeats50Hz() {
+    double error50 = rmsPositionError(50);
+    double error250 = rmsPositionError(threadHz);
+    assertTrue(
+        error250 < error50 / 3,
+        String.format(
+            "RMS position error at 250Hz (%.1f mm) should be well under 50Hz (%.1f mm)",
+            error250 * 1000, error50 * 1000));
+  }
+
+  /**
+   * Field relative speed and heading rate both swing back and forth quickly, like juking around a
+   * defender while spinning.
+   *
+   * @param out Receives the robot relative {vx, vy, omega} at time t, for the heading theta
+   */
+  private static void speeds(double t, double theta, double[] out) {
+    double speed = 3.5;
+    double direction = 2.5 * Math.sin(3 * t);
+    double fieldVx = speed * Math.cos(direction);
+    double fieldVy = speed * Math.sin(direction);
+    out[0] = fieldVx * Math.cos(theta) + fieldVy * Math.sin(theta);
+    out[1] = -fieldVx * Math.sin(theta) + fieldVy * Math.cos(theta);
+    out[2] = 5 * Math.sin(2 * t);
+  }
+
+  private static double rmsPositionError(double sampleHz) {
+    int stepsPerSample = (int) Math.round(1 / (sampleHz * simulationPeriod));
+    double[] distances = new double[4];
+    double[] angles = new double[4];
+    double[] chassis = new double[3];
+    double x = 0;
+    double y = 0;
+    double theta = 0;
+    moduleStates(0, theta, chassis, null, angles);
+    SwervePoseEstimator estimator =
+        new SwervePoseEstimator(
+            moduleLocations, 1 / sampleHz, theta, distances, angles, new Pose2d());
+
+    double sumSquared = 0;
+    int samples = 0;
+    int steps = (int) Math.round(duration / simulationPeriod);
+    for (int step = 1; step <= steps; step++) {
+      double t = step * simulationPeriod;
+      // Midpoint speeds over the step, integrated along the arc like Pose2d.exp
+      speeds(t - simulationPeriod / 2, theta + chassis[2] * simulationPeriod / 2, chassis);
+      double dtheta = chassis[2] * simulationPeriod;
+      double heading = theta + dtheta / 2;
+      x += (chassis[0] * Math.cos(heading) - chassis[1] * Math.sin(heading)) * simulationPeriod;
+      y += (chassis[0] * Math.sin(heading) + chassis[1] * Math.cos(heading)) * simulationPeriod;
+      moduleStates(t - simulationPeriod / 2, heading, chassis, distances, angles);
+      theta += dtheta;
+
+      if (step % stepsPerSample == 0) {
+        // Module angles are read at the sample, like the odometry thread does
+        moduleStates(t, theta, chassis, null, angles);
+        estimator.updateWithTime(t, theta, distances, angles);
+        double errorX = estimator.getX() - x;
+        double errorY = estimator.getY() - y;
+        sumSquared += errorX * errorX + errorY * errorY;
+        samples++;
+      }
+    }
+    return Math.sqrt(sumSquared / samples);
+  }
+
+  /** Adds each module's travel over one step to distances, if given, and sets its angle */
+  private static void moduleStates(
+      double t, double theta, double[] chassis, double[] distances, double[] angles) {
+    speeds(t, theta, chassis);
+    for (int i = 0; i < 4; i++) {
+      double moduleVx = chassis[0] - chassis[2] * moduleLocations[i].getY();
+      double moduleVy = chassis[1] + chassis[2] * moduleLocations[i].getX();
+      if (distances != null) {
+        distances[i] += Math.hypot(moduleVx, moduleVy) * simulationPeriod;
+      }
+      angles[i] = Math.atan2(moduleVy, moduleVx);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** ChassisVelocityEstimator against SwerveDriveKinematics.toChassisSpeeds on the same modules. */
+class ChassisVelocityEstimatorTest {
+  // Not a square and not centered, so no term cancels out by symmetry
+  private static final Translation2d[] moduleLocations = {
+    new Translation2d(0.35, 0.25),
+    new Translation2d(0.3, -0.28),
+    new Translation2d(-0.27, 0.3),
+    new Translation2d(-0.32, -0.24)
+  };
+
+  private final SwerveDriveKinematics wpilib = new SwerveDriveKinematics(moduleLocations);
+  private final Random random = new Random(37);
+  private final double[] speeds = new double[4];
+  private final double[] angles = new double[4];
+  private final SwerveModuleState[] states = new SwerveModuleState[4];
+
+  /** Module states that don't agree on one chassis motion, like real sensors with slip and noise */
+  private void randomModules() {
+    for (int i = 0; i < 4; i++) {
+      speeds[i] = (random.nextDouble() * 2 - 1) * 4;
+      angles[i] = (random.nextDouble() * 2 - 1) * Math.PI;
+      states[i] = new SwerveModuleState(speeds[i], new Rotation2d(angles[i]));
+    }
+  }
+
+  @Test
+  void translationMatchesWpilib() {
+    ChassisVelocityEstimator estimator = new ChassisVelocityEstimator(moduleLocations, 1);
+    for (int n = 0; n < 1000; n++) {
+      randomModules();
+      double gyroRate = (random.nextDouble() * 2 - 1) * 5;
+      estimator.update(speeds, angles, gyroRate, 0);
+
+      ChassisSpeeds expected = wpilib.toChassisSpeeds(states);
+      ChassisSpeeds actual = estimator.getRobotRelativeSpeeds();
+      assertEquals(expected.vxMetersPerSecond, actual.vxMetersPerSecond, 1e-9);
+      assertEquals(expected.vyMetersPerSecond, actual.vyMetersPerSecond, 1e-9);
+      // The gyro, not the modules
+      assertEquals(gyroRate, actual.omegaRadiansPerSecond);
+    }
+  }
+
+  @Test
+  void consistentModulesGiveTheChassisSpeeds() {
+    ChassisVelocityEstimator estimator = new ChassisVelocityEstimator(moduleLocations, 1);
+    ChassisSpeeds chassis = new ChassisSpeeds(1.3, -0.8, 2.1);
+    SwerveModuleState[] moduleStates = wpilib.toSwerveModuleStates(chassis);
+    for (int i = 0; i < 4; i++) {
+      speeds[i] = moduleStates[i].speedMetersPerSecond;
+      angles[i] = moduleStates[i].angle.getRadians();
+    }
+    estimator.update(speeds, angles, chassis.omegaRadiansPerSecond, 0);
+    assertEquals(1.3, estimator.getRobotRelativeSpeeds().vxMetersPerSecond, 1e-9);
+    assertEquals(-0.8, estimator.getRobotRelativeSpeeds().vyMetersPerSecond, 1e-9);
+  }
+
+  @Test
+  void fieldRelativeTurnsByTheHeading() {
+    ChassisVelocityEstimator estimator = new ChassisVelocityEstimator(moduleLocations, 1);
+    for (int n = 0; n < 100; n++) {
+      randomModules();
+      double heading = (random.nextDouble() * 2 - 1) * Math.PI;
+      estimator.update(speeds, angles, 0.7, heading);
+
+      ChassisSpeeds robot = wpilib.toChassisSpeeds(states);
+      Translation2d field =
+          new Translation2d(robot.vxMetersPerSecond, robot.vyMetersPerSecond)
+              .rotateBy(new Rotation2d(heading));
+      ChassisSpeeds actual = estimator.getFieldRelativeSpeeds();
+      assertEquals(field.getX(), actual.vxMetersPerSecond, 1e-9);
+      assertEquals(field.getY(), actual.vyMetersPerSecond, 1e-9);
+      assertEquals(0.7, actual.omegaRadiansPerSecond);
+    }
+  }
+
+  @Test
+  void averagesOverTheWindow() {
+    ChassisVelocityEstimator estimator = new ChassisVelocityEstimator(moduleLocations, 3);
+    double[] vx = new double[6];
+    for (int n = 0; n < vx.length; n++) {
+      randomModules();
+      estimator.update(speeds, angles, n, 0);
+      vx[n] = wpilib.toChassisSpeeds(states).vxMetersPerSecond;
+      if (n >= 2) {
+        double expected = (vx[n] + vx[n - 1] + vx[n - 2]) / 3;
+        assertEquals(expected, estimator.getRobotRelativeSpeeds().vxMetersPerSecond, 1e-9);
+        assertEquals(n - 1, estimator.getRobotRelativeSpeeds().omegaRadiansPerSecond, 1e-9);
+      }
+    }
+
+    // After a reset the old values are gone
+    estimator.reset();
+    for (int n = 0; n < 3; n++) {
+      estimator.update(speeds, angles, 4, 0);
+    }
+    assertEquals(vx[vx.length - 1], estimator.getRobotRelativeSpeeds().vxMetersPerSecond, 1e-9);
+    assertEquals(4, estimator.getRobotRelativeSpeeds().omegaRadiansPerSecond, 1e-9);
+  }
+}
@@ -0,0 +1,115 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The primitive GeometryUtils.exp and log against the Pose2d/Twist2d versions they replace, on
+ * everyday angles and around the small angle branches.
+ */
+class GeometryUtilsTest {
+  // Ordinary angles, a whole loop's worth of spinning, and the series expansions near zero
+  private static final double[] angles = {
+    0, 1e-12, -1e-12, 1e-9, -1e-9, 1e-7, 1e-5, -1e-5, 1e-3, 0.1, -0.1, 1, -2, 3, -3.1
+  };
+
+  private final Random random = new Random(29);
+  private final double[] out = new double[3];
+
+  @Test
+  void expMatchesObjectVersion() {
+    for (double dtheta : angles) {
+      for (int i = 0; i < 100; i++) {
+        double dx = (random.nextDouble() * 2 - 1) * 2;
+        double dy = (random.nextDouble() * 2 - 1) * 2;
+        Pose2d expected = GeometryUtils.exp(new Twist2d(dx, dy, dtheta));
+        GeometryUtils.exp(dx, dy, dtheta, out);
+        String message = "Twist " + dx + ", " + dy + ", " + dtheta;
+        // Documented as bit-for-bit the same
+        assertEquals(expected.getX(), out[0], message);
+        assertEquals(expected.getY(), out[1], message);
+        assertEquals(expected.getRotation().getRadians(), out[2], message);
+      }
+    }
+  }
+
+  @Test
+  void expMatchesWpilib() {
+    for (double dtheta : angles) {
+      for (int i = 0; i < 100; i++) {
+        double dx = (random.nextDouble() * 2 - 1) * 2;
+        double dy = (random.nextDouble() * 2 - 1) * 2;
+        Pose2d expected = new Pose2d().exp(new Twist2d(dx, dy, dtheta));
+        GeometryUtils.exp(dx, dy, dtheta, out);
+        String message = "Twist " + dx + ", " + dy + ", " + dtheta;
+        assertEquals(expected.getX(), out[0], 1e-12, message);
+        assertEquals(expected.getY(), out[1], 1e-12, message);
+        assertEquals(expected.getRotation().getRadians(), out[2], 1e-12, message);
+      }
+    }
+  }
+
+  @Test
+  void logMatchesObjectVersion() {
+    for (double theta : angles) {
+      for (int i = 0; i < 100; i++) {
+        double x = (random.nextDouble() * 2 - 1) * 2;
+        double y = (random.nextDouble() * 2 - 1) * 2;
+        Rotation2d rotation = new Rotation2d(theta);
+        Twist2d expected = GeometryUtils.log(new Pose2d(x, y, rotation));
+        // The object version takes the wrapped angle from the Rotation2d
+        GeometryUtils.log(x, y, rotation.getRadians(), out);
+        String message = "Transform " + x + ", " + y + ", " + theta;
+        assertEquals(expected.dx, out[0], message);
+        assertEquals(expected.dy, out[1], message);
+        assertEquals(expected.dtheta, out[2], message);
+      }
+    }
+  }
+
+  @Test
+  void logMatchesWpilibUpToItsScale() {
+    for (double theta : angles) {
+      for (int i = 0; i < 100; i++) {
+        double x = (random.nextDouble() * 2 - 1) * 2;
+        double y = (random.nextDouble() * 2 - 1) * 2;
+        Twist2d expected = new Pose2d().log(new Pose2d(x, y, new Rotation2d(theta)));
+        GeometryUtils.log(x, y, theta, out);
+        // Like the 254 code, the translation leaves out the scale Pose2d.log puts on it,
+        // |(theta/2 / tan(theta/2), theta/2)|. That is 1 + theta^2 / 24 to second order.
+        double halfTheta = theta / 2;
+        double cosMinusOne = Math.cos(theta) - 1;
+        double halfThetaByTan =
+            Math.abs(cosMinusOne) < 1e-9
+                ? 1 - theta * theta / 12
+                : -(halfTheta * Math.sin(theta)) / cosMinusOne;
+        double scale = Math.hypot(halfThetaByTan, halfTheta);
+        String message = "Transform " + x + ", " + y + ", " + theta;
+        assertEquals(expected.dx, out[0] * scale, 1e-12, message);
+        assertEquals(expected.dy, out[1] * scale, 1e-12, message);
+        assertEquals(expected.dtheta, out[2], 1e-12, message);
+      }
+    }
+  }
+
+  @Test
+  void expUndoesWpilibLog() {
+    // The way SwervePoseEstimator uses them: WPILib's log, then the primitive exp back. Just above
+    // the small angle branch, (1 - cos) / dtheta loses most of its digits, which is nanometers.
+    for (double theta : angles) {
+      double x = (random.nextDouble() * 2 - 1) * 2;
+      double y = (random.nextDouble() * 2 - 1) * 2;
+      Twist2d twist = new Pose2d().log(new Pose2d(x, y, new Rotation2d(theta)));
+      GeometryUtils.exp(twist.dx, twist.dy, twist.dtheta, out);
+      String message = "Transform " + x + ", " + y + ", " + theta;
+      assertEquals(x, out[0], 1e-8, message);
+      assertEquals(y, out[1], 1e-8, message);
+      assertEquals(theta, out[2], 1e-12, message);
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** LatencyEstimator on a measurement that is the command a known number of loops late. */
+class LatencyEstimatorTest {
+  private static final double period = 0.02;
+  // Constants.Swerve.maxDriveLatencyLoops and the rest, as Swerve uses them
+  private static final int maxLagLoops = 10;
+  private static final double minExcitation = 0.3;
+  private static final int minSamples = 50;
+  private static final double defaultLatency = 0.04;
+
+  private final Random random = new Random(43);
+
+  private static LatencyEstimator newEstimator() {
+    return new LatencyEstimator(
+        period, maxLagLoops, 0.99, minExcitation, minSamples, defaultLatency);
+  }
+
+  /** Rotation commands like a driver's: held for a few loops, then somewhere else */
+  private double[] commands(int loops) {
+    double[] commands = new double[loops];
+    double command = 0;
+    for (int n = 0; n < loops; n++) {
+      if (random.nextInt(4) == 0) {
+        command = (random.nextDouble() * 2 - 1) * 3;
+      }
+      commands[n] = command;
+    }
+    return commands;
+  }
+
+  @Test
+  void findsAPureDelay() {
+    for (int delay = 0; delay <= maxLagLoops; delay++) {
+      LatencyEstimator estimator = newEstimator();
+      double[] commands = commands(500);
+      // Loop n sends commands[n] and measures what was sent delay loops before the last one
+      for (int n = 1; n < commands.length; n++) {
+        double measurement = n - 1 - delay >= 0 ? commands[n - 1 - delay] : 0;
+        estimator.update(commands[n - 1], measurement + random.nextGaussian() * 0.05);
+      }
+      String message = "Delay of " + delay + " loops, estimated " + estimator.getLagLoops();
+      assertEquals(delay, estimator.getLagLoops(), 0.25, message);
+      assertEquals((delay + 0.5) * period, estimator.getLatencySeconds(), 0.25 * period, message);
+    }
+  }
+
+  @Test
+  void fallsBackWithoutExcitation() {
+    LatencyEstimator estimator = newEstimator();
+    assertTrue(Double.isNaN(estimator.getLagLoops()));
+    assertEquals(defaultLatency, estimator.getLatencySeconds());
+
+    // Holding still, then wiggling by less than minExcitation, doesn't count
+    for (int n = 0; n < 500; n++) {
+      estimator.update(1.5, 1.5);
+    }
+    for (int n = 0; n < 500; n++) {
+      double command = 1.5 + (n % 2) * minExcitation * 0.9;
+      estimator.update(command, 1.5);
+    }
+    assertTrue(Double.isNaN(estimator.getLagLoops()));
+    assertEquals(defaultLatency, estimator.getLatencySeconds());
+  }
+
+  @Test
+  void needsMinSamplesThenResetForgets() {
+    LatencyEstimator estimator = newEstimator();
+    double[] commands = commands(1000);
+    int delay = 2;
+    int n = 1;
+    // Updates only count once the history is full and the command changed over it
+    int counted = 0;
+    while (counted < minSamples) {
+      assertTrue(Double.isNaN(estimator.getLagLoops()), "After " + counted + " samples");
+      estimator.update(commands[n - 1], n - 1 - delay >= 0 ? commands[n - 1 - delay] : 0);
+      if (n > maxLagLoops && excited(commands, n - 1)) {
+        counted++;
+      }
+      n++;
+    }
+    assertEquals(delay, estimator.getLagLoops(), 0.25);
+
+    estimator.reset();
+    assertTrue(Double.isNaN(estimator.getLagLoops()));
+    assertEquals(defaultLatency, estimator.getLatencySeconds());
+  }
+
+  @Test
+  void interruptWaitsForAFullHistory() {
+    LatencyEstimator estimator = newEstimator();
+    // Alternating, so every loop with a full history counts
+    for (int n = 0; n < maxLagLoops + minSamples - 1; n++) {
+      estimator.update(n % 2, n % 2);
+    }
+    assertTrue(Double.isNaN(estimator.getLagLoops()));
+
+    // One sample short. After a gap the history has to fill up again before anything counts.
+    estimator.interrupt();
+    for (int n = 0; n < maxLagLoops; n++) {
+      estimator.update(n % 2, n % 2);
+      assertTrue(Double.isNaN(estimator.getLagLoops()), "Counted update " + n + " after the gap");
+    }
+    estimator.update(0, 0);
+    assertFalse(Double.isNaN(estimator.getLagLoops()));
+  }
+
+  @Test
+  void skippedLoopsDontMisalignTheSamples() {
+    LatencyEstimator estimator = newEstimator();
+    int delay = 6;
+    int segment = 25;
+    int skipped = 3;
+    // Small moves, and a big jump while loops are skipped. The command keeps going through the
+    // skipped loops, it just isn't handed over, so without lining the samples back up the jump
+    // would show up at the wrong lag after every skip.
+    double[] commands = new double[segment * 100];
+    for (int n = 0; n < commands.length; n++) {
+      double side = ((n + 2) / segment) % 2 == 0 ? 2 : -2;
+      commands[n] = side + (random.nextInt(2) == 0 ? 0.4 : 0);
+    }
+    for (int n = delay + 1; n < commands.length; n++) {
+      if (n % segment >= segment - skipped) {
+        estimator.interrupt();
+        continue;
+      }
+      estimator.update(commands[n - 1], commands[n - 1 - delay]);
+    }
+    assertEquals(delay, estimator.getLagLoops(), 0.25);
+  }
+
+  /** Whether the history ending at commands[last] changes by minExcitation */
+  private static boolean excited(double[] commands, int last) {
+    double min = commands[last];
+    double max = commands[last];
+    for (int k = 1; k <= maxLagLoops; k++) {
+      min = Math.min(min, commands[last - k]);
+      max = Math.max(max, commands[last - k]);
+    }
+    return max - min >= minExcitation;
+  }
+}
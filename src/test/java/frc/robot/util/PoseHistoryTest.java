@@ -0,0 +1,169 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+/** PoseHistory lookups on a hand-made history, then with a writer thread running. */
+class PoseHistoryTest {
+  private static final double period = 0.02;
+
+  private final double[] out = new double[PoseHistory.fields];
+
+  @Test
+  void emptyHistory() {
+    PoseHistory history = new PoseHistory(1.0, period);
+    assertFalse(history.getAt(0, out));
+    assertFalse(history.getLatest(out));
+    assertTrue(Double.isNaN(history.getNewestTimestamp()));
+    assertEquals(Optional.empty(), history.getPoseAt(0));
+  }
+
+  @Test
+  void interpolatesBetweenEntries() {
+    PoseHistory history = new PoseHistory(1.0, period);
+    history.record(1.0, 0, 0, 0, 1, 2, 0.5);
+    history.record(1.02, 0.02, 0.04, 0.01, 1.5, 2, 1.0);
+    history.record(1.04, 0.05, 0.08, 0.03, 2.5, 2, 0.0);
+
+    assertTrue(history.getAt(1.005, out));
+    assertArrayClose(new double[] {0.005, 0.01, 0.0025, 1.125, 2, 0.625}, out);
+    assertTrue(history.getAt(1.03, out));
+    assertArrayClose(new double[] {0.035, 0.06, 0.02, 2.0, 2, 0.5}, out);
+    // Right on an entry
+    assertTrue(history.getAt(1.02, out));
+    assertArrayClose(new double[] {0.02, 0.04, 0.01, 1.5, 2, 1.0}, out);
+
+    Pose2d pose = history.getPoseAt(1.01).orElseThrow();
+    assertEquals(0.01, pose.getX(), 1e-12);
+    assertEquals(0.02, pose.getY(), 1e-12);
+    assertEquals(0.005, pose.getRotation().getRadians(), 1e-12);
+  }
+
+  @Test
+  void clampsOutsideTheHistory() {
+    PoseHistory history = new PoseHistory(1.0, period);
+    history.record(2.0, 1, 2, 0.1, 0, 0, 0);
+    history.record(2.02, 3, 4, 0.2, 0, 0, 0);
+
+    assertTrue(history.getAt(0, out));
+    assertArrayClose(new double[] {1, 2, 0.1, 0, 0, 0}, out);
+    assertTrue(history.getAt(5, out));
+    assertArrayClose(new double[] {3, 4, 0.2, 0, 0, 0}, out);
+    assertTrue(history.getLatest(out));
+    assertArrayClose(new double[] {3, 4, 0.2, 0, 0, 0}, out);
+    assertEquals(2.02, history.getNewestTimestamp());
+
+    // A single entry is all there is at any time
+    PoseHistory single = new PoseHistory(1.0, period);
+    single.record(2.0, 1, 2, 0.1, 0, 0, 0);
+    assertTrue(single.getAt(1.0, out));
+    assertArrayClose(new double[] {1, 2, 0.1, 0, 0, 0}, out);
+    assertTrue(single.getAt(3.0, out));
+    assertArrayClose(new double[] {1, 2, 0.1, 0, 0, 0}, out);
+  }
+
+  @Test
+  void headingTakesTheShortWayAcrossPi() {
+    PoseHistory history = new PoseHistory(1.0, period);
+    history.record(0, 0, 0, Math.PI - 0.1, 0, 0, 0);
+    history.record(0.02, 0, 0, -Math.PI + 0.1, 0, 0, 0);
+
+    // Halfway is pi, not 0
+    assertTrue(history.getAt(0.01, out));
+    assertEquals(Math.PI, Math.abs(out[2]), 1e-12);
+    assertTrue(history.getAt(0.015, out));
+    assertEquals(-Math.PI + 0.05, out[2], 1e-12);
+
+    // Recorded headings are wrapped too
+    history.record(0.04, 0, 0, 4 * Math.PI + 0.25, 0, 0, 0);
+    assertTrue(history.getLatest(out));
+    assertEquals(0.25, out[2], 1e-12);
+  }
+
+  @Test
+  void ignoresEntriesThatArentNewer() {
+    PoseHistory history = new PoseHistory(1.0, period);
+    history.record(1.0, 1, 0, 0, 0, 0, 0);
+    history.record(1.0, 2, 0, 0, 0, 0, 0);
+    history.record(0.5, 3, 0, 0, 0, 0, 0);
+    assertTrue(history.getAt(0.5, out));
+    assertEquals(1, out[0]);
+    assertTrue(history.getLatest(out));
+    assertEquals(1, out[0]);
+  }
+
+  @Test
+  void keepsOnlyTheLastEntries() {
+    PoseHistory history = new PoseHistory(0.1, period);
+    // Rounded up to a power of two, so at least 5 entries but no more than 16
+    for (int i = 0; i < 100; i++) {
+      history.record(i * period, i, 0, 0, 0, 0, 0);
+    }
+    assertTrue(history.getAt(0, out));
+    assertTrue(out[0] >= 99 - 15 && out[0] <= 99 - 4, "Oldest entry kept is " + out[0]);
+    assertTrue(history.getAt(95 * period, out));
+    assertEquals(95, out[0], 1e-9);
+  }
+
+  @Test
+  void clearForgetsEverything() {
+    PoseHistory history = new PoseHistory(1.0, period);
+    history.record(1.0, 1, 0, 0, 0, 0, 0);
+    history.clear();
+    assertFalse(history.getLatest(out));
+    assertTrue(Double.isNaN(history.getNewestTimestamp()));
+    // Only entries after the clear are used
+    history.record(1.02, 2, 0, 0, 0, 0, 0);
+    assertTrue(history.getAt(1.0, out));
+    assertEquals(2, out[0]);
+  }
+
+  @Test
+  void readersSeeWholeEntries() throws InterruptedException {
+    PoseHistory history = new PoseHistory(0.2, period);
+    int entries = 200_000;
+    // Every field is a multiple of the time, so any mix of two writes shows up
+    Thread writer =
+        new Thread(
+            () -> {
+              for (int i = 1; i <= entries; i++) {
+                double t = i * period;
+                history.record(t, t, 2 * t, 0, 3 * t, 4 * t, 0);
+              }
+            });
+    writer.setDaemon(true);
+    writer.start();
+
+    double[] state = new double[PoseHistory.fields];
+    int reads = 0;
+    while (writer.isAlive() || reads == 0) {
+      double newest = history.getNewestTimestamp();
+      if (Double.isNaN(newest)) {
+        Thread.yield();
+        continue;
+      }
+      // Somewhere in the window, so some lookups interpolate and some clamp
+      assertTrue(history.getAt(newest - (reads % 15) * period * 0.7, state));
+      double t = state[0];
+      assertEquals(2 * t, state[1], 1e-9 * t, "y at x = " + t);
+      assertEquals(3 * t, state[3], 1e-9 * t, "vx at x = " + t);
+      assertEquals(4 * t, state[4], 1e-9 * t, "vy at x = " + t);
+      reads++;
+      if (reads % 64 == 0) {
+        Thread.yield();
+      }
+    }
+    writer.join();
+  }
+
+  private static void assertArrayClose(double[] expected, double[] actual) {
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], actual[i], 1e-12, "Field " + i);
+    }
+  }
+}
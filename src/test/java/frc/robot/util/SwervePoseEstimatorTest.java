@@ -0,0 +1,140 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Drives the ring buffer estimator and WPILib's SwerveDrivePoseEstimator side by side with the same
+ * odometry and vision measurements, and checks that they end up in the same place.
+ */
+class SwervePoseEstimatorTest {
+  // Constants.Swerve.odometryFrequency
+  private static final double period = 1.0 / 250;
+  private static final double duration = 8.0;
+
+  private static final Translation2d[] moduleLocations = {
+    new Translation2d(0.3, 0.3),
+    new Translation2d(0.3, -0.3),
+    new Translation2d(-0.3, 0.3),
+    new Translation2d(-0.3, -0.3)
+  };
+
+  @Test
+  void matchesWpilibWithVisionOnSamples() {
+    double[] error = run(false);
+    String message = describe(error);
+    assertEquals(0, error[0], 1e-7, message);
+    assertEquals(0, error[1], 1e-9, message);
+  }
+
+  @Test
+  void matchesWpilibWithVisionBetweenSamples() {
+    // WPILib interpolates the module angles between samples and we interpolate the pose, which is
+    // only the same when the modules don't turn. At 250Hz that's a few hundredths of a millimeter.
+    double[] error = run(true);
+    String message = describe(error);
+    assertEquals(0, error[0], 1e-4, message);
+    assertEquals(0, error[1], 1e-9, message);
+    assertTrue(error[2] < error[3] * 1.01, "Less accurate than WPILib: " + message);
+  }
+
+  private static String describe(double[] error) {
+    return String.format(
+        "Max difference %.2g m, %.2g rad, RMS error %.1f mm vs WPILib %.1f mm",
+        error[0], error[1], error[2] * 1000, error[3] * 1000);
+  }
+
+  /**
+   * @param betweenSamples Whether vision timestamps fall between odometry samples
+   * @return {max position difference, max heading difference, our RMS error, WPILib RMS error}
+   */
+  private static double[] run(boolean betweenSamples) {
+    Random random = new Random(42);
+    SwerveDriveKinematics kinematics = new SwerveDriveKinematics(moduleLocations);
+    SwerveModulePosition[] positions = new SwerveModulePosition[4];
+    double[] distances = new double[4];
+    double[] angles = new double[4];
+    for (int i = 0; i < 4; i++) {
+      positions[i] = new SwerveModulePosition(0, new Rotation2d());
+    }
+    Pose2d start = new Pose2d(2, 3, Rotation2d.fromDegrees(30));
+    SwerveDrivePoseEstimator wpilib =
+        new SwerveDrivePoseEstimator(kinematics, new Rotation2d(), positions, start);
+    SwervePoseEstimator ours =
+        new SwervePoseEstimator(moduleLocations, period, 0, distances, angles, start);
+
+    int steps = (int) Math.round(duration / period);
+    Pose2d[] truth = new Pose2d[steps + 1];
+    truth[0] = start;
+    double gyro = 0;
+    double maxDistance = 0;
+    double maxAngle = 0;
+    double ourSquared = 0;
+    double wpilibSquared = 0;
+    for (int step = 1; step <= steps; step++) {
+      double t = step * period;
+      double vx = 3 * Math.cos(0.9 * t);
+      double vy = 2 * Math.sin(1.7 * t);
+      double omega = 4 * Math.sin(1.1 * t);
+      truth[step] = truth[step - 1].exp(new Twist2d(vx * period, vy * period, omega * period));
+      gyro += omega * period;
+      for (int i = 0; i < 4; i++) {
+        double moduleVx = vx - omega * moduleLocations[i].getY();
+        double moduleVy = vy + omega * moduleLocations[i].getX();
+        // 2% wheel slip, so the odometry drifts and vision has something to correct
+        distances[i] += Math.hypot(moduleVx, moduleVy) * period * 1.02;
+        angles[i] = Math.atan2(moduleVy, moduleVx);
+        positions[i] = new SwerveModulePosition(distances[i], new Rotation2d(angles[i]));
+      }
+      wpilib.updateWithTime(t, new Rotation2d(gyro), positions);
+      ours.updateWithTime(t, gyro, distances, angles);
+
+      // A camera frame every 0.1s, 20 to 100ms old, with 5cm and 2 degrees of noise. Between
+      // samples the truth from the sample before is close enough, it's noisy anyway.
+      if (step % 25 == 0) {
+        double age =
+            betweenSamples ? 0.02 + 0.08 * random.nextDouble() : (5 + random.nextInt(20)) * period;
+        Pose2d seen = truth[step - (int) Math.ceil(age / period - 1e-9)];
+        Pose2d vision =
+            new Pose2d(
+                seen.getX() + random.nextGaussian() * 0.05,
+                seen.getY() + random.nextGaussian() * 0.05,
+                seen.getRotation().plus(new Rotation2d(random.nextGaussian() * Math.toRadians(2))));
+        wpilib.addVisionMeasurement(vision, t - age);
+        ours.addVisionMeasurement(vision, t - age);
+      }
+
+      Pose2d expected = wpilib.getEstimatedPosition();
+      double distance = Math.hypot(ours.getX() - expected.getX(), ours.getY() - expected.getY());
+      maxDistance = Math.max(maxDistance, distance);
+      maxAngle =
+          Math.max(
+              maxAngle,
+              Math.abs(
+                  MathUtil.angleModulus(
+                      ours.getRotationRadians() - expected.getRotation().getRadians())));
+      ourSquared += squaredDistance(ours.getX(), ours.getY(), truth[step]);
+      wpilibSquared += squaredDistance(expected.getX(), expected.getY(), truth[step]);
+    }
+    return new double[] {
+      maxDistance, maxAngle, Math.sqrt(ourSquared / steps), Math.sqrt(wpilibSquared / steps)
+    };
+  }
+
+  private static double squaredDistance(double x, double y, Pose2d pose) {
+    double dx = x - pose.getX();
+    double dy = y - pose.getY();
+    return dx * dx + dy * dy;
+  }
+}
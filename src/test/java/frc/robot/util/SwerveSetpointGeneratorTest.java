@@ -0,0 +1,88 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import org.junit.jupiter.api.Test;
+
+class SwerveSetpointGeneratorTest {
+  private static final double period = 0.02;
+  private static final double gravity = 9.81;
+  // Elevator all the way up, so the tipping limit is low: g * 0.3 / 1.2 = 2.45 m/s^2
+  private static final double centerOfMassHeight = 1.2;
+
+  private static final Translation2d[] moduleLocations = {
+    new Translation2d(0.3, 0.3),
+    new Translation2d(0.3, -0.3),
+    new Translation2d(-0.3, 0.3),
+    new Translation2d(-0.3, -0.3)
+  };
+
+  private final SwerveSetpointGenerator generator =
+      new SwerveSetpointGenerator(moduleLocations, 8.0, Math.toRadians(720));
+  private final double[] speeds = new double[4];
+  private final double[] angles = new double[4];
+
+  /** Module speeds and angles (radians) for robot relative chassis speeds */
+  private static void moduleStates(double vx, double vy, double omega, double[] s, double[] a) {
+    for (int i = 0; i < 4; i++) {
+      double moduleVx = vx - omega * moduleLocations[i].getY();
+      double moduleVy = vy + omega * moduleLocations[i].getX();
+      s[i] = Math.hypot(moduleVx, moduleVy);
+      a[i] = Math.atan2(moduleVy, moduleVx);
+    }
+  }
+
+  @Test
+  void spinningAtConstantFieldVelocityIsNotThrottled() {
+    // Driving across the field at 3 m/s while spinning at 3 rad/s. Robot relative, the velocity
+    // turns all the way around every two seconds, but the chassis isn't accelerating at all.
+    double fieldVx = 3;
+    double fieldVy = 0;
+    double omega = 3;
+    moduleStates(fieldVx, fieldVy, omega, speeds, angles);
+    generator.reset(fieldVx, fieldVy, omega, speeds, angles);
+
+    double heading = 0;
+    for (int i = 0; i < 200; i++) {
+      heading += omega * period;
+      double cos = Math.cos(heading);
+      double sin = Math.sin(heading);
+      double vx = fieldVx * cos + fieldVy * sin;
+      double vy = -fieldVx * sin + fieldVy * cos;
+      generator.generate(vx, vy, omega, centerOfMassHeight, period, speeds, angles);
+      assertEquals(vx, generator.getVx(), 1e-9, "Throttled on loop " + i);
+      assertEquals(vy, generator.getVy(), 1e-9, "Throttled on loop " + i);
+      assertEquals(omega, generator.getOmega(), 1e-9);
+      assertFalse(generator.wasLimited());
+    }
+  }
+
+  @Test
+  void straightAccelerationIsLimitedByTipping() {
+    generator.reset(0, 0, 0, speeds, angles);
+    generator.generate(3, 0, 0, centerOfMassHeight, period, speeds, angles);
+    double maxAcceleration = gravity * 0.3 / centerOfMassHeight;
+    double acceleration = generator.getVx() / period;
+    assertTrue(acceleration <= maxAcceleration + 1e-9, "Accelerated at " + acceleration);
+    assertTrue(generator.wasLimited());
+    // Bisection gets within a thousandth of the limit
+    assertEquals(maxAcceleration, acceleration, maxAcceleration * 2e-3);
+  }
+
+  @Test
+  void turningWhileDrivingStraightIsLimitedByTipping() {
+    // Keeping the same robot relative velocity while starting to spin swings the field velocity
+    // around, which is a sideways acceleration of omega * v
+    double vx = 3;
+    moduleStates(vx, 0, 0, speeds, angles);
+    generator.reset(vx, 0, 0, speeds, angles);
+    generator.generate(vx, 0, 2, centerOfMassHeight, period, speeds, angles);
+    double maxAcceleration = gravity * 0.3 / centerOfMassHeight;
+    double midOmega = generator.getOmega() / 2;
+    assertTrue(midOmega * vx <= maxAcceleration + 1e-6);
+    assertTrue(generator.getOmega() < 2);
+  }
+}
@@ -0,0 +1,189 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Vision gating the way Swerve does it: the robot drives around at 250Hz odometry while a camera
+ * sends an estimate every 30ms, and each estimate goes through the gate before the pose estimator.
+ */
+class VisionGateTest {
+  private static final double period = 1.0 / 250;
+  // Constants.Limelight
+  private static final double maxMahalanobisSquared = 11.34;
+  private static final int maxConsecutiveRejections = 25;
+  private static final int agreeingMeasurements = 5;
+
+  private static final Translation2d[] moduleLocations = {
+    new Translation2d(0.3, 0.3),
+    new Translation2d(0.3, -0.3),
+    new Translation2d(-0.3, 0.3),
+    new Translation2d(-0.3, -0.3)
+  };
+
+  /** What the camera reports, given the true pose */
+  private interface Camera {
+    /** @return Tag count, or 0 for no frame */
+    int see(double t, Pose2d truth, Random random, double[] out);
+  }
+
+  private final Random random = new Random(7);
+  private final VisionGate gate =
+      new VisionGate(maxMahalanobisSquared, maxConsecutiveRejections, agreeingMeasurements);
+  private final double[] distances = new double[4];
+  private final double[] angles = new double[4];
+  private final double[] poseAtVision = new double[3];
+  private final double[] seen = new double[3];
+  private SwervePoseEstimator estimator;
+  private Pose2d truth;
+  private double gyro = 0;
+  private double time = 0;
+  private int accepted = 0;
+
+  private void start(Pose2d actual, Pose2d believed) {
+    truth = actual;
+    gyro = actual.getRotation().getRadians();
+    estimator = new SwervePoseEstimator(moduleLocations, period, gyro, distances, angles, believed);
+  }
+
+  /** Drives a slow circle for the given time, with the camera sending a frame every 30ms */
+  private void drive(double seconds, Camera camera) {
+    int steps = (int) Math.round(seconds / period);
+    for (int step = 0; step < steps; step++) {
+      time += period;
+      double vx = 1.0;
+      double omega = 0.5;
+      truth = truth.exp(new Twist2d(vx * period, 0, omega * period));
+      gyro += omega * period;
+      for (int i = 0; i < 4; i++) {
+        double moduleVx = vx - omega * moduleLocations[i].getY();
+        double moduleVy = omega * moduleLocations[i].getX();
+        distances[i] += Math.hypot(moduleVx, moduleVy) * period;
+        angles[i] = Math.atan2(moduleVy, moduleVx);
+      }
+      estimator.updateWithTime(time, gyro, distances, angles);
+
+      if (step % 8 == 0) {
+        int tags = camera.see(time, truth, random, seen);
+        if (tags > 0) {
+          addVisionMeasurement(tags);
+        }
+      }
+    }
+  }
+
+  /** Same as Swerve.addVisionMeasurement() */
+  private void addVisionMeasurement(int tags) {
+    double xyStdDev = tags > 1 ? 0.05 : 0.2;
+    double thetaStdDev = tags > 1 ? Math.toRadians(3) : Double.POSITIVE_INFINITY;
+    double distance =
+        estimator.getMahalanobisSquared(
+            seen[0], seen[1], seen[2], time, xyStdDev, xyStdDev, thetaStdDev);
+    if (estimator.getPoseAt(time, poseAtVision)
+        && !gate.accept(
+            distance,
+            seen[0] - poseAtVision[0],
+            seen[1] - poseAtVision[1],
+            MathUtil.angleModulus(seen[2] - poseAtVision[2]),
+            xyStdDev,
+            xyStdDev,
+            thetaStdDev,
+            tags)) {
+      return;
+    }
+    estimator.addVisionMeasurement(
+        seen[0], seen[1], seen[2], time, xyStdDev, xyStdDev, thetaStdDev);
+    accepted++;
+  }
+
+  private double positionError() {
+    return Math.hypot(estimator.getX() - truth.getX(), estimator.getY() - truth.getY());
+  }
+
+  /** The truth plus a little noise */
+  private static int truthful(int tags, Pose2d truth, Random random, double[] out) {
+    out[0] = truth.getX() + random.nextGaussian() * 0.02;
+    out[1] = truth.getY() + random.nextGaussian() * 0.02;
+    out[2] = truth.getRotation().getRadians() + random.nextGaussian() * Math.toRadians(1);
+    return tags;
+  }
+
+  @Test
+  void usesGoodEstimates() {
+    start(new Pose2d(3, 4, new Rotation2d()), new Pose2d(3, 4, new Rotation2d()));
+    drive(5, (t, truth, random, out) -> truthful(2, truth, random, out));
+    assertEquals(0, gate.getRejections());
+    assertTrue(accepted > 150);
+  }
+
+  @Test
+  void recoversFromWrongStartingPose() {
+    // Nobody set the starting pose before auto
+    start(new Pose2d(3, 4, Rotation2d.fromDegrees(20)), new Pose2d());
+    drive(3, (t, truth, random, out) -> truthful(2, truth, random, out));
+    assertTrue(positionError() < 0.1, "Still off by " + positionError() + "m");
+  }
+
+  @Test
+  void singleTagNeverOverrulesOdometry() {
+    // Only one tag in view, and it always solves to the wrong side of the tag
+    start(new Pose2d(3, 4, new Rotation2d()), new Pose2d(3, 4, new Rotation2d()));
+    drive(
+        30,
+        (t, truth, random, out) -> {
+          truthful(1, truth, random, out);
+          out[0] += 1.5;
+          return 1;
+        });
+    assertEquals(0, accepted);
+    assertTrue(positionError() < 0.01);
+  }
+
+  @Test
+  void inconsistentCameraNeverOverrulesOdometry() {
+    // Sees two tags but the pose jumps around, e.g. a bad calibration or a reflection. This used to
+    // get every 26th frame through.
+    start(new Pose2d(3, 4, new Rotation2d()), new Pose2d(3, 4, new Rotation2d()));
+    drive(
+        30,
+        (t, truth, random, out) -> {
+          out[0] = random.nextDouble() * 16.54;
+          out[1] = random.nextDouble() * 8.02;
+          out[2] = (random.nextDouble() * 2 - 1) * Math.PI;
+          return 2;
+        });
+    assertEquals(0, accepted);
+    assertTrue(positionError() < 0.01);
+  }
+
+  @Test
+  void waitsForEnoughRejections() {
+    VisionGate gate = new VisionGate(maxMahalanobisSquared, 3, 2);
+    // Agreeing multi-tag estimates that odometry disagrees with
+    for (int i = 0; i < 3; i++) {
+      assertFalse(gate.accept(100, 1, 0, 0, 0.05, 0.05, 0.05, 2));
+    }
+    assertTrue(gate.accept(100, 1, 0, 0, 0.05, 0.05, 0.05, 2));
+    assertEquals(0, gate.getRejections());
+  }
+
+  @Test
+  void resetStartsOver() {
+    VisionGate gate = new VisionGate(maxMahalanobisSquared, 3, 2);
+    for (int i = 0; i < 3; i++) {
+      assertFalse(gate.accept(100, 1, 0, 0, 0.05, 0.05, 0.05, 2));
+    }
+    gate.reset();
+    assertFalse(gate.accept(100, 1, 0, 0, 0.05, 0.05, 0.05, 2));
+    assertEquals(1, gate.getRejections());
+  }
+}